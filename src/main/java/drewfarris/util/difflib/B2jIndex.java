@@ -0,0 +1,350 @@
+package drewfarris.util.difflib;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Compressed-sparse-row form of difflib's <code>b2j</code> map.
+ * <p>
+ * Every distinct element of b is assigned an entry number through a small open-addressed table. The indices at which the element appears in b are stored, in
+ * increasing order, in the slice <code>positions[offsets[entry]:offsets[entry + 1]]</code> of a single <code>int[]</code>. The index is built in two counting
+ * passes over b: the first counts the occurrences of each element, and the second, after the counts have been turned into offsets, scatters the positions into
+ * place.
+ * </p>
+ * <p>
+ * Junk and popular elements keep their positions in the index, but are flagged so that {@link #chain(int)} does not report them; this mirrors Python removing
+ * them from <code>b2j</code> while still letting the full occurrence counts be recovered with {@link #count(int)}.
+ * </p>
+ * <p>
+ * Instances are immutable once built.
+ * </p>
+ */
+final class B2jIndex {
+
+    private static final byte JUNK = 1;
+    private static final byte POPULAR = 2;
+
+    /** number of distinct elements in Latin-1 */
+    static final int LATIN1 = 256;
+
+    /** the keys of an index built by {@link #buildLatin1(byte[], int, SequenceMatcher.JunkFilter, boolean)}: every entry is its own element */
+    private static final int[] LATIN1_KEYS = new int[LATIN1];
+
+    static {
+        for (int e = 0; e < LATIN1; e++) {
+            LATIN1_KEYS[e] = e;
+        }
+    }
+
+    /** open-addressed hash table mapping an element to <code>entry + 1</code>; 0 marks an empty slot. null for a Latin-1 index. */
+    private final int[] table;
+
+    /** entry -&gt; element */
+    private final int[] keys;
+
+    /** entry -&gt; start of the entry's run in {@link #positions}; has one trailing element holding the total length */
+    private final int[] offsets;
+
+    /** the indices into b of every element, grouped by entry and ascending within each entry */
+    private final int[] positions;
+
+    /** entry -&gt; combination of {@link #JUNK} and {@link #POPULAR} */
+    private final byte[] flags;
+
+    /** number of distinct elements in b */
+    private final int entries;
+
+    /** true if any element of b is junk */
+    private final boolean hasJunk;
+
+    private B2jIndex(int[] table, int[] keys, int[] offsets, int[] positions, byte[] flags, int entries, boolean hasJunk) {
+        this.table = table;
+        this.keys = keys;
+        this.offsets = offsets;
+        this.positions = positions;
+        this.flags = flags;
+        this.entries = entries;
+        this.hasJunk = hasJunk;
+    }
+
+    /**
+     * Build the index for b, see {@link SequenceMatcher} for the treatment of junk and popular elements.
+     *
+     * @param b
+     *            the sequence to index
+     * @param junkFilter
+     *            the junk filter, or null if no element is junk
+     * @param autoJunk
+     *            true to apply the "automatic junk heuristic" that treats popular elements as junk
+     * @return the index
+     */
+    static B2jIndex build(String b, SequenceMatcher.JunkFilter junkFilter, boolean autoJunk) {
+        return build(b.length(), b::charAt, junkFilter == null ? null : elt -> junkFilter.isJunk((char) elt), autoJunk);
+    }
+
+    /**
+     * Build the index for a sequence of arbitrary <code>int</code> elements, the same way as {@link #build(String, SequenceMatcher.JunkFilter, boolean)}.
+     *
+     * @param b
+     *            the sequence to index
+     * @param junk
+     *            true for the elements that are junk, or null if no element is junk; called once per distinct element
+     * @param autoJunk
+     *            true to apply the "automatic junk heuristic" that treats popular elements as junk
+     * @return the index
+     */
+    static B2jIndex build(int[] b, IntPredicate junk, boolean autoJunk) {
+        return build(b.length, i -> b[i], junk, autoJunk);
+    }
+
+    /**
+     * Build the index for the n elements of b, read through an accessor from index to element.
+     */
+    private static B2jIndex build(int n, IntUnaryOperator b, IntPredicate junk, boolean autoJunk) {
+        // first pass: assign entries and count occurrences
+        int[] table = new int[16];
+        int[] keys = new int[8];
+        int[] counts = new int[8];
+        int entries = 0;
+        for (int i = 0; i < n; i++) {
+            int elt = b.applyAsInt(i);
+            int slot = slot(table, keys, elt);
+            int entry = table[slot] - 1;
+            if (entry < 0) {
+                if (entries == keys.length) {
+                    keys = grow(keys);
+                    counts = grow(counts);
+                }
+                entry = entries++;
+                keys[entry] = elt;
+                table[slot] = entry + 1;
+                if (entries * 2 > table.length) {
+                    table = rehash(table, keys, entries);
+                }
+            }
+            counts[entry]++;
+        }
+
+        // turn the counts into offsets
+        int[] offsets = new int[entries + 1];
+        for (int e = 0; e < entries; e++) {
+            offsets[e + 1] = offsets[e] + counts[e];
+        }
+
+        // second pass: scatter the positions, reusing counts as per-entry cursors
+        System.arraycopy(offsets, 0, counts, 0, entries);
+        int[] positions = new int[n];
+        for (int i = 0; i < n; i++) {
+            int entry = table[slot(table, keys, b.applyAsInt(i))] - 1;
+            positions[counts[entry]++] = i;
+        }
+
+        return finish(table, keys, offsets, positions, entries, junk, autoJunk);
+    }
+
+    /**
+     * Build the index for a b whose elements all fit in a byte. The entry of an element is the element itself, so lookups index straight into the 256-entry
+     * offsets table instead of probing a hash table, and the counting passes need no lookups at all.
+     *
+     * @param b
+     *            the Latin-1 encoded elements of b
+     * @param n
+     *            the number of elements of b, a prefix of the array
+     * @param junkFilter
+     *            the junk filter, or null if no element is junk
+     * @param autoJunk
+     *            true to apply the "automatic junk heuristic" that treats popular elements as junk
+     * @return the index
+     */
+    static B2jIndex buildLatin1(byte[] b, int n, SequenceMatcher.JunkFilter junkFilter, boolean autoJunk) {
+        int[] offsets = new int[LATIN1 + 1];
+        for (int i = 0; i < n; i++) {
+            offsets[(b[i] & 0xFF) + 1]++;
+        }
+        for (int e = 0; e < LATIN1; e++) {
+            offsets[e + 1] += offsets[e];
+        }
+        int[] cursors = Arrays.copyOf(offsets, LATIN1);
+        int[] positions = new int[n];
+        for (int i = 0; i < n; i++) {
+            positions[cursors[b[i] & 0xFF]++] = i;
+        }
+        return finish(null, LATIN1_KEYS, offsets, positions, LATIN1, junkFilter == null ? null : elt -> junkFilter.isJunk((char) elt), autoJunk);
+    }
+
+    private static B2jIndex finish(int[] table, int[] keys, int[] offsets, int[] positions, int entries, IntPredicate junk, boolean autoJunk) {
+        // Because the junk filter is a user-defined function, and we test for junk a LOT, it's important to minimize the number of calls. It is only called
+        // once per distinct element here.
+        byte[] flags = new byte[entries];
+        boolean hasJunk = false;
+        if (junk != null) {
+            for (int e = 0; e < entries; e++) {
+                if (offsets[e + 1] > offsets[e] && junk.test(keys[e])) {
+                    flags[e] |= JUNK;
+                    hasJunk = true;
+                }
+            }
+        }
+
+        // nonjunk items in b treated as junk by the heuristic (if used).
+        int n = positions.length;
+        if (autoJunk && n >= 200) {
+            int nTest = n / 100 + 1;
+            for (int e = 0; e < entries; e++) {
+                if (flags[e] == 0 && offsets[e + 1] - offsets[e] > nTest) {
+                    flags[e] |= POPULAR;
+                }
+            }
+        }
+
+        return new B2jIndex(table, keys, offsets, positions, flags, entries, hasJunk);
+    }
+
+    /**
+     * Look up the entry for an element that is in <code>b2j</code>, i.e. one that appears in b and is neither junk nor popular.
+     *
+     * @param elt
+     *            the element
+     * @return the entry, to be used with {@link #start(int)} and {@link #end(int)}, or -1 if b2j has no entry for elt
+     */
+    int chain(int elt) {
+        int entry = entry(elt);
+        if (entry < 0 || flags[entry] != 0) {
+            return -1;
+        }
+        return entry;
+    }
+
+    /**
+     * @param entry
+     *            an entry returned by {@link #chain(int)}
+     * @return the offset in {@link #positions()} of the first index of the entry's element
+     */
+    int start(int entry) {
+        return offsets[entry];
+    }
+
+    /**
+     * @param entry
+     *            an entry returned by {@link #chain(int)}
+     * @return the offset in {@link #positions()} just past the last index of the entry's element
+     */
+    int end(int entry) {
+        return offsets[entry + 1];
+    }
+
+    /**
+     * @return the shared positions array; callers must not modify it
+     */
+    int[] positions() {
+        return positions;
+    }
+
+    /**
+     * @param elt
+     *            an element of b
+     * @return true if elt is junk
+     */
+    boolean isJunk(int elt) {
+        if (!hasJunk) {
+            return false;
+        }
+        int entry = entry(elt);
+        return entry >= 0 && (flags[entry] & JUNK) != 0;
+    }
+
+    /**
+     * @return true if any element of b is junk
+     */
+    boolean hasJunk() {
+        return hasJunk;
+    }
+
+    /**
+     * @param elt
+     *            an element
+     * @return the number of times elt appears in b, including junk and popular occurrences
+     */
+    int count(int elt) {
+        int entry = entry(elt);
+        return entry < 0 ? 0 : occurrences(entry);
+    }
+
+    /**
+     * @return the number of entries; every entry returned by {@link #entry(int)} is less than this
+     */
+    int entries() {
+        return entries;
+    }
+
+    /**
+     * @param entry
+     *            an entry returned by {@link #entry(int)}
+     * @return the number of times the entry's element appears in b, including junk and popular occurrences
+     */
+    int occurrences(int entry) {
+        return offsets[entry + 1] - offsets[entry];
+    }
+
+    /**
+     * @return the set of elements of b that are junk
+     */
+    Set<Character> junk() {
+        Set<Character> junk = new HashSet<>();
+        for (int e = 0; e < entries; e++) {
+            if ((flags[e] & JUNK) != 0) {
+                junk.add((char) keys[e]);
+            }
+        }
+        return junk;
+    }
+
+    /**
+     * Look up the entry for any element of b, including junk and popular elements. For an index built by
+     * {@link #buildLatin1(byte[], int, SequenceMatcher.JunkFilter, boolean)} the entry of an element in <code>[0, 256)</code> is the element itself.
+     *
+     * @param elt
+     *            the element
+     * @return the entry, or -1 if elt does not appear in b; an entry of a Latin-1 index may have no occurrences
+     */
+    int entry(int elt) {
+        if (table == null) {
+            return elt >= 0 && elt < LATIN1 ? elt : -1;
+        }
+        return table[slot(table, keys, elt)] - 1;
+    }
+
+    /**
+     * Find the slot of table holding elt, or the empty slot where it would be inserted. The table is never more than half full, so the probe always terminates.
+     */
+    private static int slot(int[] table, int[] keys, int elt) {
+        int mask = table.length - 1;
+        int slot = hash(elt) & mask;
+        while (table[slot] != 0 && keys[table[slot] - 1] != elt) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(int elt) {
+        int h = elt * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int[] rehash(int[] table, int[] keys, int entries) {
+        int[] bigger = new int[table.length * 2];
+        for (int e = 0; e < entries; e++) {
+            bigger[slot(bigger, keys, keys[e])] = e + 1;
+        }
+        return bigger;
+    }
+
+    private static int[] grow(int[] array) {
+        int[] bigger = new int[array.length * 2];
+        System.arraycopy(array, 0, bigger, 0, array.length);
+        return bigger;
+    }
+}
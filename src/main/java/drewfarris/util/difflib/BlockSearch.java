@@ -0,0 +1,420 @@
+package drewfarris.util.difflib;
+
+import java.util.Arrays;
+
+/**
+ * The search for matching blocks shared by {@link SequenceMatcher} and {@link IntSequenceMatcher}: difflib's longest match search over a {@link B2jIndex}, the
+ * extension of a match over junk, the decomposition of the sequences into matching blocks, and the count behind {@link SequenceMatcher#quickRatio()}.
+ * <p>
+ * The elements of both sequences are read through an {@link Elements} view as <code>int</code>s, the values that b2j is keyed by. A view also measures runs of
+ * equal elements, which the views over arrays do with {@link Arrays#mismatch(byte[], int, int, byte[], int, int)} and its overloads, so the JIT can compile the
+ * forward extension of a match to vector compares.
+ * </p>
+ */
+final class BlockSearch {
+
+    /** marks a stack entry of {@link #collectMatchingBlocks(LongestMatchFinder, int, int, int, int, Scratch, SequenceMatcher.MatchVisitor)} as a match */
+    private static final int PENDING_MATCH = -1;
+
+    private BlockSearch() {}
+
+    /**
+     * Find the longest matching block in <code>a[alo:ahi]</code> and <code>b[blo:bhi]</code>, as described by
+     * {@link SequenceMatcher#findLongestMatch(int, int, int, int)}. The match is left in {@link Scratch#besti}, {@link Scratch#bestj} and
+     * {@link Scratch#bestSize} rather than allocated.
+     */
+    static void findLongestMatch(Elements elements, B2jIndex b2j, int alo, int ahi, int blo, int bhi, Scratch scratch) {
+        int besti = alo;
+        int bestj = blo;
+        int bestSize = 0;
+
+        // find the longest junk-free match
+        // during an iteration of the loop, j2len[j] = length of longest
+        // junk-free match ending with a[i-1] and b[j]
+
+        // Use alternating primitive rows to avoid object creation and hashing. A slot of j2len only counts if it was written with the previous
+        // row's generation; anything older reads as 0. Slot j - blo + 1 holds j2len[j].
+        scratch.prepareJ2len(ahi - alo, bhi - blo);
+        long[] j2len = scratch.j2lenRow1;
+        long[] newj2len = scratch.j2lenRow2;
+        long generation = ++scratch.j2lenGeneration;
+
+        final int[] positions = b2j.positions();
+        for (int i = alo; i < ahi; i++) {
+            long newGeneration = ++scratch.j2lenGeneration;
+            int entry = b2j.chain(elements.a(i));
+            int end = entry < 0 ? 0 : b2j.end(entry);
+            for (int p = entry < 0 ? 0 : b2j.start(entry); p < end; p++) {
+                int j = positions[p];
+                if (j < blo)
+                    continue;
+                if (j >= bhi)
+                    break;
+                long prev = j2len[j - blo];
+                int k = (prev >>> 32) == generation ? (int) prev + 1 : 1;
+                newj2len[j - blo + 1] = newGeneration << 32 | k;
+                if (k > bestSize) {
+                    besti = i - k + 1;
+                    bestj = j - k + 1;
+                    bestSize = k;
+                }
+            }
+            // Swap references instead of creating new objects
+            long[] temp = j2len;
+            j2len = newj2len;
+            newj2len = temp;
+            generation = newGeneration;
+        }
+
+        extendMatch(elements, b2j, alo, ahi, blo, bhi, besti, bestj, bestSize, scratch);
+    }
+
+    /**
+     * Extend a longest junk-free match, first with non-junk and then with junk elements, on both sides, as long as the elements match. The forward extensions
+     * first measure the run of equal elements with {@link Elements#equalRun(int, int, int, int)}, and then only look up junk within that run; without junk in b
+     * there is nothing to look up, and the junk extensions cannot move.
+     */
+    static void extendMatch(Elements elements, B2jIndex b2j, int alo, int ahi, int blo, int bhi, int besti, int bestj, int bestSize, Scratch scratch) {
+        final boolean hasJunk = b2j.hasJunk();
+
+        while (besti > alo && bestj > blo && !(hasJunk && b2j.isJunk(elements.b(bestj - 1))) && elements.a(besti - 1) == elements.b(bestj - 1)) {
+            besti--;
+            bestj--;
+            bestSize++;
+        }
+        int run = elements.equalRun(besti + bestSize, ahi, bestj + bestSize, bhi);
+        if (!hasJunk) {
+            scratch.setBest(besti, bestj, bestSize + run);
+            return;
+        }
+        int k = 0;
+        while (k < run && !b2j.isJunk(elements.b(bestj + bestSize + k))) {
+            k++;
+        }
+        bestSize += k;
+
+        while (besti > alo && bestj > blo && b2j.isJunk(elements.b(bestj - 1)) && elements.a(besti - 1) == elements.b(bestj - 1)) {
+            besti--;
+            bestj--;
+            bestSize++;
+        }
+        run -= k;
+        k = 0;
+        while (k < run && b2j.isJunk(elements.b(bestj + bestSize + k))) {
+            k++;
+        }
+        bestSize += k;
+
+        scratch.setBest(besti, bestj, bestSize);
+    }
+
+    /**
+     * Pass the matching blocks within <code>a[alo:ahi]</code> and <code>b[blo:bhi]</code> to visitor, in ascending order. Adjacent blocks are not merged.
+     *
+     * @param finder
+     *            finds the longest match of each range, leaving it in the scratch state
+     */
+    static void collectMatchingBlocks(LongestMatchFinder finder, int alo, int ahi, int blo, int bhi, Scratch scratch, SequenceMatcher.MatchVisitor visitor) {
+        // This is most naturally expressed as a recursive algorithm, but
+        // at least one user bumped into extreme use cases that exceeded
+        // the recursion limit on their box. So, now we maintain a stack
+        // of the work still to be done. Each range is replaced by its right
+        // range, its match and its left range, so the left range is always
+        // finished first and the blocks come out in order, with no sort.
+        int top = scratch.push(0, alo, ahi, blo, bhi);
+        while (top > 0) {
+            top -= 4;
+            int[] stack = scratch.stack;
+            alo = stack[top];
+            ahi = stack[top + 1];
+            blo = stack[top + 2];
+            bhi = stack[top + 3];
+            if (bhi == PENDING_MATCH) {
+                visitor.visitMatch(alo, ahi, blo);
+                continue;
+            }
+            finder.findLongestMatch(alo, ahi, blo, bhi, scratch);
+            int i = scratch.besti;
+            int j = scratch.bestj;
+            int k = scratch.bestSize;
+            if (k > 0) {
+                if (i + k < ahi && j + k < bhi) {
+                    top = scratch.push(top, i + k, ahi, j + k, bhi);
+                }
+                top = scratch.push(top, i, j, k, PENDING_MATCH);
+                if (alo < i && blo < j) {
+                    top = scratch.push(top, alo, i, blo, j);
+                }
+            }
+        }
+    }
+
+    /**
+     * Count the matches of {@link SequenceMatcher#quickRatio()}: the elements of a that can be paired with an occurrence of the same element in b, ignoring
+     * order.
+     *
+     * @param la
+     *            the number of elements of a
+     * @return the number of matches
+     */
+    static int quickRatioMatches(Elements elements, int la, B2jIndex b2j, Scratch scratch) {
+        // The number of times each element of b occurs is already in the b2j index, so this only has to count how many of those occurrences the elements
+        // of a use up, in a scratch array indexed by entry. Only the slots that were used are cleared afterwards, so a call costs O(len(a)) and allocates
+        // nothing once the scratch array is large enough.
+        final int[] used = scratch.prepareQuickRatio(b2j.entries());
+        final int[] touched = scratch.quickRatioTouched;
+        int touchedCount = 0;
+        int matches = 0;
+        for (int i = 0; i < la; i++) {
+            int entry = b2j.entry(elements.a(i));
+            if (entry < 0) {
+                continue;
+            }
+            int numb = used[entry];
+            if (numb < b2j.occurrences(entry)) {
+                if (numb == 0) {
+                    touched[touchedCount++] = entry;
+                }
+                used[entry] = numb + 1;
+                matches++;
+            }
+        }
+        for (int t = 0; t < touchedCount; t++) {
+            used[touched[t]] = 0;
+        }
+        return matches;
+    }
+
+    /**
+     * @return <code>2.0*M / T</code> for M matches among T elements, or 1 if both sequences are empty
+     */
+    static double ratio(int matches, int length) {
+        if (length == 0) {
+            return 1.0;
+        }
+        return 2.0 * matches / length;
+    }
+
+    /**
+     * The elements of the two sequences being matched, as the <code>int</code>s that b2j is keyed by.
+     */
+    interface Elements {
+        /**
+         * @return element i of a
+         */
+        int a(int i);
+
+        /**
+         * @return element j of b
+         */
+        int b(int j);
+
+        /**
+         * @return the number of equal elements at the start of <code>a[ai:ahi]</code> and <code>b[bj:bhi]</code>
+         */
+        int equalRun(int ai, int ahi, int bj, int bhi);
+    }
+
+    /**
+     * Finds the longest match of a range, leaving it in {@link Scratch#besti}, {@link Scratch#bestj} and {@link Scratch#bestSize}.
+     */
+    interface LongestMatchFinder {
+        void findLongestMatch(int alo, int ahi, int blo, int bhi, Scratch scratch);
+    }
+
+    /** Elements of two strings, read as <code>char</code>s */
+    static final class StringElements implements Elements {
+        private final String a;
+        private final String b;
+
+        StringElements(String a, String b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        public int a(int i) {
+            return a.charAt(i);
+        }
+
+        @Override
+        public int b(int j) {
+            return b.charAt(j);
+        }
+
+        @Override
+        public int equalRun(int ai, int ahi, int bj, int bhi) {
+            int limit = Math.min(ahi - ai, bhi - bj);
+            int k = 0;
+            while (k < limit && a.charAt(ai + k) == b.charAt(bj + k)) {
+                k++;
+            }
+            return k;
+        }
+    }
+
+    /** Elements of two strings that both fit in Latin-1, read from their encodings */
+    static final class Latin1Elements implements Elements {
+        private final byte[] a;
+        private final byte[] b;
+
+        /**
+         * @param a
+         *            the Latin-1 encoding of a, in a prefix of the array
+         * @param b
+         *            the Latin-1 encoding of b, in a prefix of the array
+         */
+        Latin1Elements(byte[] a, byte[] b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        public int a(int i) {
+            return a[i] & 0xFF;
+        }
+
+        @Override
+        public int b(int j) {
+            return b[j] & 0xFF;
+        }
+
+        @Override
+        public int equalRun(int ai, int ahi, int bj, int bhi) {
+            int limit = Math.min(ahi - ai, bhi - bj);
+            int mismatch = Arrays.mismatch(a, ai, ai + limit, b, bj, bj + limit);
+            return mismatch < 0 ? limit : mismatch;
+        }
+    }
+
+    /** Elements of two <code>int[]</code>s */
+    static final class IntElements implements Elements {
+        private final int[] a;
+        private final int[] b;
+
+        IntElements(int[] a, int[] b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        public int a(int i) {
+            return a[i];
+        }
+
+        @Override
+        public int b(int j) {
+            return b[j];
+        }
+
+        @Override
+        public int equalRun(int ai, int ahi, int bj, int bhi) {
+            int limit = Math.min(ahi - ai, bhi - bj);
+            int mismatch = Arrays.mismatch(a, ai, ai + limit, b, bj, bj + limit);
+            return mismatch < 0 ? limit : mismatch;
+        }
+    }
+
+    /**
+     * Working state for finding matching blocks. A matcher owns one for the calls made on it directly, and every parallel task of
+     * {@link SequenceMatcher#getMatchingBlocks()} gets its own, so that the sequences and b2j can be shared between threads while the state that changes during
+     * a search is not.
+     */
+    static final class Scratch {
+
+        /**
+         * Reusable j2len rows for {@link BlockSearch#findLongestMatch(Elements, B2jIndex, int, int, int, int, Scratch)}, indexed by <code>j - blo + 1</code>.
+         * Each slot packs the generation that wrote it into the high 32 bits and the match length into the low 32 bits, so a row is invalidated by bumping
+         * {@link #j2lenGeneration} rather than by clearing it.
+         */
+        long[] j2lenRow1 = new long[0];
+        long[] j2lenRow2 = new long[0];
+
+        /** the most recently used j2len generation */
+        int j2lenGeneration;
+
+        /** the result of the last search, set by {@link #setBest(int, int, int)} */
+        int besti;
+        int bestj;
+        int bestSize;
+
+        /** b2j entry -&gt; number of its occurrences in b used up by a, for {@link BlockSearch#quickRatioMatches}; all zero between calls */
+        int[] quickRatioUsed = new int[0];
+
+        /** the entries of {@link #quickRatioUsed} set during a call, so that only they need to be cleared */
+        int[] quickRatioTouched = new int[0];
+
+        /** work stack of ranges still to be searched and matches still to be passed on, four ints per entry; see {@link #push(int, int, int, int, int)} */
+        int[] stack = new int[64];
+
+        /** Reusable automaton for {@link SequenceMatcher.LongestMatchEngine#SUFFIX_AUTOMATON}, created on first use */
+        private SuffixAutomaton suffixAutomaton;
+
+        void setBest(int besti, int bestj, int bestSize) {
+            this.besti = besti;
+            this.bestj = bestj;
+            this.bestSize = bestSize;
+        }
+
+        /**
+         * Push an entry onto {@link #stack}, growing it if needed.
+         *
+         * @param top
+         *            the current size of the stack, in ints
+         * @return the new size of the stack
+         */
+        int push(int top, int x0, int x1, int x2, int x3) {
+            if (top + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[top] = x0;
+            stack[top + 1] = x1;
+            stack[top + 2] = x2;
+            stack[top + 3] = x3;
+            return top + 4;
+        }
+
+        /**
+         * Make sure the quickRatio scratch arrays can hold the given number of b2j entries.
+         *
+         * @param entries
+         *            the number of entries in b2j
+         * @return {@link #quickRatioUsed}, all zero
+         */
+        int[] prepareQuickRatio(int entries) {
+            if (quickRatioUsed.length < entries) {
+                quickRatioUsed = new int[entries];
+                quickRatioTouched = new int[entries];
+            }
+            return quickRatioUsed;
+        }
+
+        SuffixAutomaton suffixAutomaton() {
+            if (suffixAutomaton == null) {
+                suffixAutomaton = new SuffixAutomaton();
+            }
+            return suffixAutomaton;
+        }
+
+        /**
+         * Make sure the j2len rows are large enough for a range of b, and that the generation counter will not overflow during a search over the given number
+         * of rows.
+         *
+         * @param rows
+         *            the number of elements of a to be searched
+         * @param width
+         *            the number of elements of b to be searched
+         */
+        void prepareJ2len(int rows, int width) {
+            if (j2lenRow1.length < width + 1) {
+                j2lenRow1 = new long[width + 1];
+                j2lenRow2 = new long[width + 1];
+            }
+            if (j2lenGeneration > Integer.MAX_VALUE - rows - 1) {
+                Arrays.fill(j2lenRow1, 0L);
+                Arrays.fill(j2lenRow2, 0L);
+                j2lenGeneration = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package drewfarris.util.difflib;
+
+import java.util.List;
+
+/**
+ * A corpus of possibilities prepared once for many {@link #getCloseMatches(String, int, double)} queries.
+ * <p>
+ * {@link SequenceMatcher#getCloseMatches(String, List, int, double)} has to look at every possibility on every call, although the first two filters it applies
+ * need very little of them: {@link SequenceMatcher#realQuickRatio()} depends only on the lengths of the two strings, and {@link SequenceMatcher#quickRatio()}
+ * only on their character counts. This index groups the possibilities by length and stores the character counts of each one as a signature, its distinct
+ * characters in ascending order with the number of times each occurs. A query visits the length buckets in order of their <code>realQuickRatio</code> bound,
+ * best first, and stops at the first bucket that can no longer reach the cutoff or beat the n matches already found. Within a bucket, the
+ * <code>quickRatio</code> bound is the sum of the smaller of the two counts of each character, computed by merging the signature of the word with the stored
+ * one, and only the possibilities that survive it have their {@link SequenceMatcher#ratio()} computed.
+ * </p>
+ * <p>
+ * The result of a query is exactly that of {@link SequenceMatcher#getCloseMatches(String, List, int, double)} over the same list, ties included. The index is
+ * immutable, and queries may run concurrently.
+ * </p>
+ */
+public final class CloseMatchIndex {
+
+    /** the possibilities, in their original order */
+    private final String[] words;
+
+    /** the possibilities grouped by length */
+    private final LengthBuckets buckets;
+
+    /** possibility -&gt; start of its signature in {@link #signatureChars} and {@link #signatureCounts}; has one trailing element */
+    private final int[] signatureOffsets;
+
+    /** the distinct characters of each possibility, ascending */
+    private final char[] signatureChars;
+
+    /** the number of times each character of {@link #signatureChars} occurs in its possibility */
+    private final int[] signatureCounts;
+
+    /**
+     * Index a corpus of possibilities.
+     *
+     * @param possibilities
+     *            the sequences against which words will be matched; copied, so later changes to the list are not seen
+     */
+    public CloseMatchIndex(List<String> possibilities) {
+        this.words = possibilities.toArray(new String[0]);
+        int size = words.length;
+
+        // signatures, in two passes over the sorted characters, which are the 1-grams of each possibility: count the distinct ones, then fill them in
+        this.signatureOffsets = new int[size + 1];
+        long[][] sorted = new long[size][];
+        for (int w = 0; w < size; w++) {
+            sorted[w] = QGramIndex.grams(words[w], 1);
+            signatureOffsets[w + 1] = signatureOffsets[w] + QGramIndex.distinct(sorted[w]);
+        }
+        this.signatureChars = new char[signatureOffsets[size]];
+        this.signatureCounts = new int[signatureOffsets[size]];
+        for (int w = 0; w < size; w++) {
+            fillSignature(sorted[w], signatureOffsets[w + 1] - signatureOffsets[w], signatureChars, signatureCounts, signatureOffsets[w]);
+            sorted[w] = null;
+        }
+
+        this.buckets = new LengthBuckets(words);
+    }
+
+    /**
+     * @return the number of possibilities in the index
+     */
+    public int size() {
+        return words.length;
+    }
+
+    /**
+     * Return the best "good enough" matches for word among the indexed possibilities; see {@link SequenceMatcher#getCloseMatches(String, List, int, double)}.
+     *
+     * @param word
+     *            is a sequence for which close matches are desired (typically a string).
+     * @param n
+     *            is the maximum number of close matches to return. n must be &gt; 0.
+     * @param cutoff
+     *            is a float in <code>[0, 1]</code>. Possibilities that don't score at least that similar to word are ignored.
+     * @return The best (no more than n) matches among the possibilities are returned in a list, sorted by similarity score, most similar first.
+     */
+    public List<String> getCloseMatches(String word, int n, double cutoff) {
+        SequenceMatcher.checkCloseMatchArguments(n, cutoff);
+        int lw = word.length();
+        long[] sorted = QGramIndex.grams(word, 1);
+        int distinct = QGramIndex.distinct(sorted);
+        char[] wordChars = new char[distinct];
+        int[] wordCounts = new int[distinct];
+        fillSignature(sorted, distinct, wordChars, wordCounts, 0);
+
+        // buckets in order of their realQuickRatio bound, best first; ties in the order of the bucket, so the order is deterministic. The bound rises with the
+        // bucket length up to lw and falls after it, so that order merges the buckets shorter than lw, longest first, with the rest, shortest first
+        int count = buckets.count();
+        int up = buckets.bucketOf(lw);
+        if (up < 0) {
+            up = -up - 1;
+        }
+        int down = up - 1;
+
+        TopMatches result = new TopMatches(n, cutoff);
+        SequenceMatcher s = new SequenceMatcher("", SequenceMatcher.compile(word, null, true));
+        while (down >= 0 || up < count) {
+            int bucket = up == count || down >= 0 && bucketBound(lw, down) >= bucketBound(lw, up) ? down-- : up++;
+            int lb = buckets.lengths[bucket];
+            if (!result.admits(bucketBound(lw, bucket), -1)) {
+                // the remaining buckets have no better bound
+                break;
+            }
+            for (int k = buckets.offsets[bucket]; k < buckets.offsets[bucket + 1]; k++) {
+                int w = buckets.members[k];
+                int matches = commonCount(wordChars, wordCounts, w);
+                if (!result.admits(BlockSearch.ratio(matches, lw + lb), w)) {
+                    continue;
+                }
+                s.setSequenceA(words[w]);
+                double ratio = s.ratioIfAbove(result.threshold());
+                if (ratio >= 0) {
+                    result.offer(ratio, w, words[w]);
+                }
+            }
+        }
+        return result.words();
+    }
+
+    /**
+     * @return the realQuickRatio of a word of length lw against the possibilities of a bucket
+     */
+    private double bucketBound(int lw, int bucket) {
+        int lb = buckets.lengths[bucket];
+        return BlockSearch.ratio(Math.min(lw, lb), lw + lb);
+    }
+
+    /**
+     * @return the quickRatio matches of the word signature against possibility w: the sum over the characters they share of the smaller count
+     */
+    private int commonCount(char[] wordChars, int[] wordCounts, int w) {
+        int matches = 0;
+        int i = 0;
+        int j = signatureOffsets[w];
+        int end = signatureOffsets[w + 1];
+        while (i < wordChars.length && j < end) {
+            char x = wordChars[i];
+            char y = signatureChars[j];
+            if (x < y) {
+                i++;
+            } else if (x > y) {
+                j++;
+            } else {
+                matches += Math.min(wordCounts[i], signatureCounts[j]);
+                i++;
+                j++;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Store the signature of a string, from its sorted 1-grams with distinct values among them, in chars and counts starting at offset.
+     */
+    private static void fillSignature(long[] sorted, int distinct, char[] chars, int[] counts, int offset) {
+        long[] values = new long[distinct];
+        int[] runs = new int[distinct];
+        QGramIndex.runLengths(sorted, values, runs);
+        for (int k = 0; k < distinct; k++) {
+            chars[offset + k] = (char) values[k];
+            counts[offset + k] = runs[k];
+        }
+    }
+}
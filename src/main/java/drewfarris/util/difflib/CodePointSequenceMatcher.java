@@ -0,0 +1,244 @@
+package drewfarris.util.difflib;
+
+import java.util.List;
+
+/**
+ * {@link SequenceMatcher} for strings compared by Unicode code point rather than by UTF-16 <code>char</code>.
+ * <p>
+ * {@link SequenceMatcher} sees a supplementary character, such as an emoji or a rare CJK ideograph, as two surrogate <code>char</code>s, so two different emoji
+ * that share a high surrogate partly match, and the ratio is inflated. This matcher decodes each string into an <code>int[]</code> of code points once, when it
+ * is set, and matches those with an {@link IntSequenceMatcher}, so a supplementary character is a single element that either matches or does not. Unpaired
+ * surrogates are elements of their own, as {@link String#codePointAt(int)} decodes them. For strings with no surrogates the results are those of
+ * {@link SequenceMatcher}.
+ * </p>
+ * <p>
+ * Matching blocks and opcodes are in code point offsets; {@link #getCharOpcodes()} gives the same opcodes in <code>char</code> offsets into the original
+ * strings, for highlighting or slicing them.
+ * </p>
+ */
+public final class CodePointSequenceMatcher {
+
+    /** code point offset -&gt; char offset, one more than there are code points, or null if the string has no surrogates and the offsets are the same */
+    private int[] aCharOffsets;
+    private int[] bCharOffsets;
+
+    private final IntSequenceMatcher matcher;
+
+    /** the opcodes in char offsets, cleared when either sequence changes */
+    private PackedOpcodes charOpcodes;
+
+    /**
+     * Construct a CodePointSequenceMatcher with no junk filter and the "automatic junk heuristic" enabled.
+     *
+     * @param a
+     *            the first of two sequences to be compared
+     * @param b
+     *            the second of two sequences to be compared
+     */
+    public CodePointSequenceMatcher(String a, String b) {
+        this(null, a, b, true);
+    }
+
+    /**
+     * Construct a CodePointSequenceMatcher.
+     *
+     * @param junkFilter
+     *            true for the code points of b that are junk, or null if no code point is junk; called once per distinct code point of b
+     * @param a
+     *            the first of two sequences to be compared
+     * @param b
+     *            the second of two sequences to be compared
+     * @param autoJunk
+     *            set false to disable the "automatic junk heuristic" that treats popular elements as junk
+     */
+    public CodePointSequenceMatcher(IntSequenceMatcher.JunkFilter junkFilter, String a, String b, boolean autoJunk) {
+        this.matcher = new IntSequenceMatcher(junkFilter, new int[0], new int[0], autoJunk);
+        setSequences(a, b);
+    }
+
+    /**
+     * Set the two sequences to be compared
+     *
+     * @param a
+     *            the first sequence to be compared
+     * @param b
+     *            the second sequence to be compared
+     */
+    public void setSequences(String a, String b) {
+        setSequenceA(a);
+        setSequenceB(b);
+    }
+
+    /**
+     * Set the first sequence to be compared.
+     * <p>
+     * The second sequence to be compared is not changed.
+     * </p>
+     *
+     * @param a
+     *            the first sequence to be compared
+     */
+    public void setSequenceA(String a) {
+        int[] codePoints = codePoints(a);
+        this.aCharOffsets = codePoints.length == a.length() ? null : charOffsets(a, codePoints.length);
+        this.charOpcodes = null;
+        matcher.setSequenceA(codePoints);
+    }
+
+    /**
+     * Set the second sequence to be compared.
+     * <p>
+     * The first sequence to be compared is not changed.
+     * </p>
+     *
+     * @param b
+     *            the second sequence to be compared
+     */
+    public void setSequenceB(String b) {
+        int[] codePoints = codePoints(b);
+        this.bCharOffsets = codePoints.length == b.length() ? null : charOffsets(b, codePoints.length);
+        this.charOpcodes = null;
+        matcher.setSequenceB(codePoints);
+    }
+
+    /**
+     * @return the code points of s
+     */
+    private static int[] codePoints(String s) {
+        int[] codePoints = new int[s.codePointCount(0, s.length())];
+        for (int i = 0, k = 0; i < s.length(); k++) {
+            int codePoint = s.codePointAt(i);
+            codePoints[k] = codePoint;
+            i += Character.charCount(codePoint);
+        }
+        return codePoints;
+    }
+
+    /**
+     * @return code point offset -&gt; char offset in s, for offsets 0 to count inclusive
+     */
+    private static int[] charOffsets(String s, int count) {
+        int[] offsets = new int[count + 1];
+        for (int i = 0, k = 0; k < count; k++) {
+            offsets[k] = i;
+            i += Character.charCount(s.codePointAt(i));
+        }
+        offsets[count] = s.length();
+        return offsets;
+    }
+
+    /**
+     * @param codePointOffset
+     *            an offset into the first sequence, in code points, from 0 to its number of code points inclusive
+     * @return the same offset in chars
+     */
+    public int charOffsetA(int codePointOffset) {
+        return charOffset(aCharOffsets, codePointOffset);
+    }
+
+    /**
+     * @param codePointOffset
+     *            an offset into the second sequence, in code points, from 0 to its number of code points inclusive
+     * @return the same offset in chars
+     */
+    public int charOffsetB(int codePointOffset) {
+        return charOffset(bCharOffsets, codePointOffset);
+    }
+
+    private static int charOffset(int[] charOffsets, int codePointOffset) {
+        return charOffsets == null ? codePointOffset : charOffsets[codePointOffset];
+    }
+
+    /**
+     * Find the longest matching block in <code>a[alo:ahi]</code> and <code>b[blo:bhi]</code>, in code point offsets, as
+     * {@link SequenceMatcher#findLongestMatch(int, int, int, int)} does.
+     *
+     * @param alo
+     *            the start of the range of a
+     * @param ahi
+     *            the end of the range of a
+     * @param blo
+     *            the start of the range of b
+     * @param bhi
+     *            the end of the range of b
+     * @return the longest matching block
+     */
+    public SequenceMatcher.Match findLongestMatch(int alo, int ahi, int blo, int bhi) {
+        return matcher.findLongestMatch(alo, ahi, blo, bhi);
+    }
+
+    /**
+     * @return the matching blocks, in code point offsets; see {@link SequenceMatcher#getMatchingBlocks()}
+     */
+    public List<SequenceMatcher.Match> getMatchingBlocks() {
+        return matcher.getMatchingBlocks();
+    }
+
+    /**
+     * @return the matching blocks, in code point offsets; see {@link SequenceMatcher#getPackedMatchingBlocks()}
+     */
+    public PackedMatchingBlocks getPackedMatchingBlocks() {
+        return matcher.getPackedMatchingBlocks();
+    }
+
+    /**
+     * @return the opcodes, in code point offsets; see {@link SequenceMatcher#getOpcodes()}
+     */
+    public List<SequenceMatcher.Opcode> getOpcodes() {
+        return matcher.getOpcodes();
+    }
+
+    /**
+     * @return the opcodes, in code point offsets; see {@link SequenceMatcher#getPackedOpcodes()}
+     */
+    public PackedOpcodes getPackedOpcodes() {
+        return matcher.getPackedOpcodes();
+    }
+
+    /**
+     * @return the opcodes of {@link #getOpcodes()}, in char offsets into the original strings
+     */
+    public List<SequenceMatcher.Opcode> getCharOpcodes() {
+        return getPackedCharOpcodes().asList();
+    }
+
+    /**
+     * @return the opcodes of {@link #getPackedOpcodes()}, in char offsets into the original strings
+     */
+    public PackedOpcodes getPackedCharOpcodes() {
+        PackedOpcodes opcodes = matcher.getPackedOpcodes();
+        if (aCharOffsets == null && bCharOffsets == null) {
+            return opcodes;
+        }
+        if (charOpcodes == null) {
+            PackedOpcodes.Builder builder = new PackedOpcodes.Builder(opcodes.count());
+            for (int index = 0; index < opcodes.count(); index++) {
+                builder.add(opcodes.tag(index), charOffsetA(opcodes.i1(index)), charOffsetA(opcodes.i2(index)), charOffsetB(opcodes.j1(index)),
+                                charOffsetB(opcodes.j2(index)));
+            }
+            this.charOpcodes = builder.build();
+        }
+        return charOpcodes;
+    }
+
+    /**
+     * @return a measure of the sequences' similarity, counted in code points; see {@link SequenceMatcher#ratio()}
+     */
+    public double ratio() {
+        return matcher.ratio();
+    }
+
+    /**
+     * @return an upper bound on {@link #ratio()}, see {@link SequenceMatcher#quickRatio()}
+     */
+    public double quickRatio() {
+        return matcher.quickRatio();
+    }
+
+    /**
+     * @return an upper bound on {@link #quickRatio()}, see {@link SequenceMatcher#realQuickRatio()}
+     */
+    public double realQuickRatio() {
+        return matcher.realQuickRatio();
+    }
+}
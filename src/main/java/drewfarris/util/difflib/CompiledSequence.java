@@ -0,0 +1,67 @@
+package drewfarris.util.difflib;
+
+import java.util.Set;
+
+/**
+ * The second sequence of a {@link SequenceMatcher} together with its <code>b2j</code> index, built once by
+ * {@link SequenceMatcher#compile(String, SequenceMatcher.JunkFilter, boolean)}.
+ * <p>
+ * Indexing b is the expensive part of {@link SequenceMatcher#setSequenceB(String)}. A compiled sequence is immutable and safe to publish to other threads, so
+ * one index of a reference text can be shared by any number of matchers, one per thread, each created with
+ * {@link SequenceMatcher#SequenceMatcher(String, CompiledSequence)} or given it with {@link SequenceMatcher#setSequenceB(CompiledSequence)}. Everything that
+ * changes during a comparison stays in the matcher.
+ * </p>
+ */
+public final class CompiledSequence {
+
+    /** the sequence */
+    final String b;
+
+    /** the Latin-1 encoding of b, or null if some element of b does not fit in a byte; never modified */
+    final byte[] latin1;
+
+    /** the index of b */
+    final B2jIndex b2j;
+
+    /** the junk filter the index was built with, or null */
+    final SequenceMatcher.JunkFilter junkFilter;
+
+    /** whether the index was built with the "automatic junk heuristic" */
+    final boolean autoJunk;
+
+    CompiledSequence(String b, byte[] latin1, B2jIndex b2j, SequenceMatcher.JunkFilter junkFilter, boolean autoJunk) {
+        this.b = b;
+        this.latin1 = latin1;
+        this.b2j = b2j;
+        this.junkFilter = junkFilter;
+        this.autoJunk = autoJunk;
+    }
+
+    /**
+     * @return the sequence that was compiled
+     */
+    public String getSequence() {
+        return b;
+    }
+
+    /**
+     * @return the junk filter the sequence was compiled with, or null
+     */
+    public SequenceMatcher.JunkFilter getJunkFilter() {
+        return junkFilter;
+    }
+
+    /**
+     * @return true if the sequence was compiled with the "automatic junk heuristic" that treats popular elements as junk
+     */
+    public boolean isAutoJunk() {
+        return autoJunk;
+    }
+
+    /**
+     * @return the set of characters in the sequence that are considered junk
+     */
+    public Set<Character> getJunk() {
+        return b2j.junk();
+    }
+}
@@ -0,0 +1,159 @@
+package drewfarris.util.difflib;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A line-by-line diff of two files, or of two {@link LineSequence}s, for inputs too large to read into strings.
+ * <p>
+ * Both files are memory-mapped and split into lines without copying. Each distinct line of b is then given a dense <code>int</code> id, found through a hash
+ * table keyed by the lines' 64-bit hashes; two lines only share an id once their bytes have been compared, so a hash collision can never make different lines
+ * match. Each line of a gets the id of the equal line of b, or an id that matches nothing. The matching blocks and opcodes are those of an
+ * {@link IntSequenceMatcher} over the ids, so their offsets are line numbers, from 0, and they are what {@link SequenceMatcher} would give for the two lists of
+ * lines.
+ * </p>
+ */
+public final class FileDiff {
+
+    private final LineSequence a;
+    private final LineSequence b;
+    private final IntSequenceMatcher matcher;
+
+    /**
+     * Diff two sequences of lines.
+     *
+     * @param a
+     *            the first sequence of lines
+     * @param b
+     *            the second sequence of lines
+     * @param junkFilter
+     *            true for the lines of b that are junk, or null if no line is junk; called once per distinct line of b
+     * @param autoJunk
+     *            set false to disable the "automatic junk heuristic" that treats popular lines as junk
+     * @throws IllegalArgumentException
+     *             if b has too many lines to intern, more than 2<sup>29</sup>
+     */
+    public FileDiff(LineSequence a, LineSequence b, LineJunkFilter junkFilter, boolean autoJunk) {
+        this.a = Objects.requireNonNull(a, "a");
+        this.b = Objects.requireNonNull(b, "b");
+
+        InternTable ids = new InternTable(b.size());
+        InternTable.Equality sameInB = (line, firstLine) -> b.sameLine(line, b, firstLine);
+        int[] bIds = new int[b.size()];
+        for (int j = 0; j < bIds.length; j++) {
+            bIds[j] = ids.intern(b.hash(j), j, sameInB);
+        }
+        InternTable.Equality sameAsInB = (line, firstLine) -> a.sameLine(line, b, firstLine);
+        int[] aIds = new int[a.size()];
+        for (int i = 0; i < aIds.length; i++) {
+            aIds[i] = ids.find(a.hash(i), i, sameAsInB);
+        }
+        this.matcher = new IntSequenceMatcher(junkFilter == null ? null : id -> junkFilter.isJunk(b, ids.firstItem(id)), aIds, bIds, autoJunk);
+    }
+
+    /**
+     * Diff two files line by line, with no junk filter and the "automatic junk heuristic" enabled.
+     *
+     * @param a
+     *            the first file
+     * @param b
+     *            the second file
+     * @return the diff
+     * @throws IOException
+     *             if either file cannot be mapped
+     */
+    public static FileDiff compare(Path a, Path b) throws IOException {
+        return compare(a, b, null, true);
+    }
+
+    /**
+     * Diff two files line by line.
+     *
+     * @param a
+     *            the first file
+     * @param b
+     *            the second file
+     * @param junkFilter
+     *            true for the lines of b that are junk, or null if no line is junk
+     * @param autoJunk
+     *            set false to disable the "automatic junk heuristic" that treats popular lines as junk
+     * @return the diff
+     * @throws IOException
+     *             if either file cannot be mapped
+     */
+    public static FileDiff compare(Path a, Path b, LineJunkFilter junkFilter, boolean autoJunk) throws IOException {
+        return new FileDiff(LineSequence.map(a), LineSequence.map(b), junkFilter, autoJunk);
+    }
+
+    /**
+     * @return the lines of the first file
+     */
+    public LineSequence getA() {
+        return a;
+    }
+
+    /**
+     * @return the lines of the second file
+     */
+    public LineSequence getB() {
+        return b;
+    }
+
+    /**
+     * @return the matching blocks, in line numbers; see {@link SequenceMatcher#getMatchingBlocks()}
+     */
+    public List<SequenceMatcher.Match> getMatchingBlocks() {
+        return matcher.getMatchingBlocks();
+    }
+
+    /**
+     * @return the matching blocks, in line numbers; see {@link SequenceMatcher#getPackedMatchingBlocks()}
+     */
+    public PackedMatchingBlocks getPackedMatchingBlocks() {
+        return matcher.getPackedMatchingBlocks();
+    }
+
+    /**
+     * @return the opcodes, in line numbers; see {@link SequenceMatcher#getOpcodes()}
+     */
+    public List<SequenceMatcher.Opcode> getOpcodes() {
+        return matcher.getOpcodes();
+    }
+
+    /**
+     * @return the opcodes, in line numbers; see {@link SequenceMatcher#getPackedOpcodes()}
+     */
+    public PackedOpcodes getPackedOpcodes() {
+        return matcher.getPackedOpcodes();
+    }
+
+    /**
+     * @return a measure of the files' similarity, see {@link SequenceMatcher#ratio()}
+     */
+    public double ratio() {
+        return matcher.ratio();
+    }
+
+    /**
+     * @return an upper bound on {@link #ratio()}, see {@link SequenceMatcher#quickRatio()}
+     */
+    public double quickRatio() {
+        return matcher.quickRatio();
+    }
+
+    /**
+     * Junk filter over lines
+     */
+    public interface LineJunkFilter {
+        /**
+         * @param lines
+         *            the second sequence of lines
+         * @param line
+         *            the first line of b with these bytes
+         * @return true if the line should be considered junk
+         */
+        boolean isJunk(LineSequence lines, int line);
+    }
+}
@@ -0,0 +1,233 @@
+package drewfarris.util.difflib;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * {@link SequenceMatcher} for sequences of <code>int</code> tokens, such as word or line ids, code points or any other elements that have been mapped to ints.
+ * <p>
+ * The b2j index, the junk and popular element handling, the longest match search with its extension over junk, the matching blocks and the opcodes are those of
+ * {@link SequenceMatcher}, and give the same results for the same elements. Tokens are compared as <code>int</code>s only, with no boxing, and may take any
+ * <code>int</code> value, so alphabets far larger than the 65536 values of a <code>char</code> are fine. Once its working arrays have grown to fit, a matcher
+ * allocates nothing while searching but the blocks and opcodes it returns. {@link ObjectSequenceMatcher} interns elements of other types to tokens and matches
+ * them here.
+ * </p>
+ * <p>
+ * The arrays passed in are not copied, and must not be changed while the matcher is using them.
+ * </p>
+ */
+public final class IntSequenceMatcher {
+
+    private static final int[] EMPTY = new int[0];
+
+    /** first sequence */
+    private int[] a = EMPTY;
+
+    /** second sequence */
+    private int[] b = EMPTY;
+
+    /** the index of b */
+    private B2jIndex b2j;
+
+    /** true for junk elements of b, or null if there are none */
+    private final JunkFilter junkFilter;
+
+    /** autoJunk should be set to <code>false</code> to disable the "automatic junk heuristic" that treats popular elements as junk. */
+    private final boolean autoJunk;
+
+    /** cached results, cleared when either sequence changes */
+    private PackedMatchingBlocks matchingBlocks;
+    private PackedOpcodes opcodes;
+
+    /** the elements of a and b */
+    private BlockSearch.Elements elements = new BlockSearch.IntElements(EMPTY, EMPTY);
+
+    /** reusable working state for the search */
+    private final BlockSearch.Scratch scratch = new BlockSearch.Scratch();
+
+    /**
+     * Construct an IntSequenceMatcher with no junk filter and the "automatic junk heuristic" enabled.
+     *
+     * @param a
+     *            the first of two sequences to be compared
+     * @param b
+     *            the second of two sequences to be compared
+     */
+    public IntSequenceMatcher(int[] a, int[] b) {
+        this(null, a, b, true);
+    }
+
+    /**
+     * Construct an IntSequenceMatcher.
+     *
+     * @param junkFilter
+     *            true for the tokens of b that are junk, or null if no token is junk; called once per distinct token of b
+     * @param a
+     *            the first of two sequences to be compared
+     * @param b
+     *            the second of two sequences to be compared
+     * @param autoJunk
+     *            set false to disable the "automatic junk heuristic" that treats popular elements as junk
+     */
+    public IntSequenceMatcher(JunkFilter junkFilter, int[] a, int[] b, boolean autoJunk) {
+        this.junkFilter = junkFilter;
+        this.autoJunk = autoJunk;
+        setSequences(a, b);
+    }
+
+    /**
+     * Set the two sequences to be compared
+     *
+     * @param a
+     *            the first sequence to be compared
+     * @param b
+     *            the second sequence to be compared
+     */
+    public void setSequences(int[] a, int[] b) {
+        setSequenceA(a);
+        setSequenceB(b);
+    }
+
+    /**
+     * Set the first sequence to be compared.
+     * <p>
+     * The second sequence to be compared is not changed.
+     * </p>
+     *
+     * @param a
+     *            the first sequence to be compared
+     */
+    public void setSequenceA(int[] a) {
+        this.a = Objects.requireNonNull(a, "a");
+        this.elements = new BlockSearch.IntElements(a, b);
+        this.matchingBlocks = null;
+        this.opcodes = null;
+    }
+
+    /**
+     * Set the second sequence to be compared, and index it.
+     * <p>
+     * The first sequence to be compared is not changed.
+     * </p>
+     *
+     * @param b
+     *            the second sequence to be compared
+     */
+    public void setSequenceB(int[] b) {
+        this.b = Objects.requireNonNull(b, "b");
+        this.b2j = B2jIndex.build(b, junkFilter == null ? null : junkFilter::isJunk, autoJunk);
+        this.elements = new BlockSearch.IntElements(a, b);
+        this.matchingBlocks = null;
+        this.opcodes = null;
+    }
+
+    /**
+     * @param token
+     *            a token
+     * @return true if the token occurs in b and the junk filter calls it junk; popular tokens are not junk in this sense
+     */
+    public boolean isBJunk(int token) {
+        return b2j.isJunk(token);
+    }
+
+    /**
+     * Find the longest matching block in <code>a[alo:ahi]</code> and <code>b[blo:bhi]</code>, as {@link SequenceMatcher#findLongestMatch(int, int, int, int)}
+     * does.
+     *
+     * @param alo
+     *            the start of the range of a
+     * @param ahi
+     *            the end of the range of a
+     * @param blo
+     *            the start of the range of b
+     * @param bhi
+     *            the end of the range of b
+     * @return the longest matching block
+     */
+    public SequenceMatcher.Match findLongestMatch(int alo, int ahi, int blo, int bhi) {
+        findLongestMatch(alo, ahi, blo, bhi, scratch);
+        return new SequenceMatcher.Match(scratch.besti, scratch.bestj, scratch.bestSize);
+    }
+
+    /**
+     * {@link #findLongestMatch(int, int, int, int)}, leaving the match in the working state.
+     */
+    private void findLongestMatch(int alo, int ahi, int blo, int bhi, BlockSearch.Scratch scratch) {
+        BlockSearch.findLongestMatch(elements, b2j, alo, ahi, blo, bhi, scratch);
+    }
+
+    /**
+     * @return the matching blocks, see {@link SequenceMatcher#getMatchingBlocks()}
+     */
+    public List<SequenceMatcher.Match> getMatchingBlocks() {
+        return getPackedMatchingBlocks().asList();
+    }
+
+    /**
+     * @return the matching blocks, see {@link SequenceMatcher#getPackedMatchingBlocks()}
+     */
+    public PackedMatchingBlocks getPackedMatchingBlocks() {
+        if (matchingBlocks == null) {
+            PackedMatchingBlocks.Builder builder = new PackedMatchingBlocks.Builder(16);
+            SequenceMatcher.AdjacentMatchMerger merger = new SequenceMatcher.AdjacentMatchMerger(builder::add);
+            BlockSearch.collectMatchingBlocks(this::findLongestMatch, 0, a.length, 0, b.length, scratch, merger);
+            merger.finish(a.length, b.length);
+            this.matchingBlocks = builder.build();
+        }
+        return matchingBlocks;
+    }
+
+    /**
+     * @return the opcodes, see {@link SequenceMatcher#getOpcodes()}
+     */
+    public List<SequenceMatcher.Opcode> getOpcodes() {
+        return getPackedOpcodes().asList();
+    }
+
+    /**
+     * @return the opcodes, see {@link SequenceMatcher#getPackedOpcodes()}
+     */
+    public PackedOpcodes getPackedOpcodes() {
+        if (opcodes == null) {
+            PackedMatchingBlocks blocks = getPackedMatchingBlocks();
+            PackedOpcodes.Builder builder = new PackedOpcodes.Builder(blocks.count() * 2);
+            SequenceMatcher.OpcodeEmitter emitter = new SequenceMatcher.OpcodeEmitter(builder::add);
+            for (int index = 0; index < blocks.count(); index++) {
+                emitter.visitMatch(blocks.aOffset(index), blocks.bOffset(index), blocks.size(index));
+            }
+            this.opcodes = builder.build();
+        }
+        return opcodes;
+    }
+
+    /**
+     * @return a measure of the sequences' similarity, see {@link SequenceMatcher#ratio()}
+     */
+    public double ratio() {
+        return BlockSearch.ratio(getPackedMatchingBlocks().totalSize(), a.length + b.length);
+    }
+
+    /**
+     * @return an upper bound on {@link #ratio()}, see {@link SequenceMatcher#quickRatio()}
+     */
+    public double quickRatio() {
+        return BlockSearch.ratio(BlockSearch.quickRatioMatches(elements, a.length, b2j, scratch), a.length + b.length);
+    }
+
+    /**
+     * @return an upper bound on {@link #quickRatio()}, see {@link SequenceMatcher#realQuickRatio()}
+     */
+    public double realQuickRatio() {
+        return BlockSearch.ratio(Math.min(a.length, b.length), a.length + b.length);
+    }
+
+    /** Junk filter over <code>int</code> tokens */
+    public interface JunkFilter {
+        /**
+         * @param token
+         *            a token of b
+         * @return true if the token should be considered junk
+         */
+        boolean isJunk(int token);
+    }
+}
@@ -0,0 +1,136 @@
+package drewfarris.util.difflib;
+
+/**
+ * Open-addressing hash table that interns the distinct items of a sequence, such as the lines of a file or the tokens of a text, to dense <code>int</code> ids.
+ * <p>
+ * Items are numbered by their position in the sequence, and the caller supplies each item's hash and an {@link Equality} that compares two items' contents. An
+ * item only gets an existing id once the equality has confirmed it against the first item with that id, so a hash collision can never merge different items.
+ * </p>
+ */
+final class InternTable {
+
+    /** the id {@link #find(long, int, Equality)} returns for an item that has not been interned; it matches no interned item */
+    static final int ABSENT = -1;
+
+    /** the most slots a table can have: the largest power of two that a Java array can hold */
+    static final int MAX_CAPACITY = 1 << 30;
+
+    /** slot -&gt; item hash, and id + 1, or 0 if the slot is empty */
+    private final long[] hashes;
+    private final int[] slots;
+
+    /** shifts a 64-bit product down to a slot number */
+    private final int shift;
+
+    /** id -&gt; the first item with it */
+    private final int[] firstItems;
+    private int ids;
+
+    /**
+     * @param items
+     *            the most items that will be interned
+     * @throws IllegalArgumentException
+     *             if that many items cannot fit in a table
+     */
+    InternTable(int items) {
+        int capacity = capacity(items);
+        this.hashes = new long[capacity];
+        this.slots = new int[capacity];
+        this.shift = Long.numberOfLeadingZeros(capacity) + 1;
+        this.firstItems = new int[items];
+    }
+
+    /**
+     * @return the number of slots for a table of items, a power of two with at least twice as many slots as items
+     * @throws IllegalArgumentException
+     *             if that is more than {@link #MAX_CAPACITY}
+     */
+    static int capacity(long items) {
+        long capacity = Long.highestOneBit(Math.max(items, 4L) * 2 - 1) << 1;
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("too many items to intern: " + items + " (at most " + MAX_CAPACITY / 2 + ")");
+        }
+        return (int) capacity;
+    }
+
+    /**
+     * @param hash
+     *            the item's hash
+     * @param item
+     *            the item
+     * @param equality
+     *            compares the item with the first item of an id
+     * @return the id of an item, assigning the next id if no item so far is equal to it
+     */
+    int intern(long hash, int item, Equality equality) {
+        int mask = slots.length - 1;
+        for (int slot = slot(hash);; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                id = ids++;
+                hashes[slot] = hash;
+                slots[slot] = id + 1;
+                firstItems[id] = item;
+                return id;
+            }
+            if (hashes[slot] == hash && equality.equal(item, firstItems[id])) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * @param hash
+     *            the hash of an item of any sequence
+     * @param item
+     *            the item
+     * @param equality
+     *            compares the item with the first item of an id
+     * @return the id of the interned item equal to it, or {@link #ABSENT} if there is none
+     */
+    int find(long hash, int item, Equality equality) {
+        int mask = slots.length - 1;
+        for (int slot = slot(hash);; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                return ABSENT;
+            }
+            if (hashes[slot] == hash && equality.equal(item, firstItems[id])) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * @return the first item interned with an id
+     */
+    int firstItem(int id) {
+        return firstItems[id];
+    }
+
+    /**
+     * @return the number of distinct items
+     */
+    int size() {
+        return ids;
+    }
+
+    /**
+     * Fibonacci hashing: the high bits of the product depend on every bit of the hash, so weak hashes still spread over the slots.
+     */
+    private int slot(long hash) {
+        return (int) ((hash * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    /** Compares the contents of two items */
+    interface Equality {
+        /**
+         * @param item
+         *            an item being looked up
+         * @param firstItem
+         *            the first item of an id
+         * @return true if they are equal
+         */
+        boolean equal(int item, int firstItem);
+    }
+}
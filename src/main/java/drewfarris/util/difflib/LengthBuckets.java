@@ -0,0 +1,69 @@
+package drewfarris.util.difflib;
+
+import java.util.Arrays;
+
+/**
+ * The strings of an index grouped by length, for queries that bound the ratio of a whole group from the lengths alone.
+ * <p>
+ * The buckets are built by sorting <code>(length, index)</code> keys packed into <code>long</code>s and splitting them into runs of equal length, so the
+ * members of every bucket are in ascending order. Instances are immutable once built.
+ * </p>
+ */
+final class LengthBuckets {
+
+    /** the distinct lengths of the strings, ascending */
+    final int[] lengths;
+
+    /** bucket -&gt; start of its run in {@link #members}; has one trailing element holding the total length */
+    final int[] offsets;
+
+    /** string indices grouped by bucket, ascending within each bucket */
+    final int[] members;
+
+    /**
+     * @param words
+     *            the strings to group, identified by their position
+     */
+    LengthBuckets(String[] words) {
+        int size = words.length;
+        long[] keys = new long[size];
+        for (int w = 0; w < size; w++) {
+            keys[w] = (long) words[w].length() << 32 | w;
+        }
+        Arrays.sort(keys);
+        this.members = new int[size];
+        int buckets = 0;
+        for (int k = 0; k < size; k++) {
+            members[k] = (int) keys[k];
+            if (k == 0 || keys[k] >>> 32 != keys[k - 1] >>> 32) {
+                buckets++;
+            }
+        }
+        this.lengths = new int[buckets];
+        this.offsets = new int[buckets + 1];
+        int bucket = -1;
+        for (int k = 0; k < size; k++) {
+            if (k == 0 || keys[k] >>> 32 != keys[k - 1] >>> 32) {
+                bucket++;
+                lengths[bucket] = (int) (keys[k] >>> 32);
+                offsets[bucket] = k;
+            }
+        }
+        offsets[buckets] = size;
+    }
+
+    /**
+     * @return the number of buckets
+     */
+    int count() {
+        return lengths.length;
+    }
+
+    /**
+     * @return the bucket of the strings of a length, or, as {@link Arrays#binarySearch(int[], int)} returns, <code>-(insertion point) - 1</code> if no string
+     *         has that length
+     */
+    int bucketOf(int length) {
+        return Arrays.binarySearch(lengths, length);
+    }
+}
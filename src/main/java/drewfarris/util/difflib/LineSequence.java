@@ -0,0 +1,173 @@
+package drewfarris.util.difflib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The lines of a file, or of any other bytes, found without copying the bytes, for diffing large files line by line with {@link FileDiff}.
+ * <p>
+ * A line is the bytes up to and including a <code>'\n'</code>, or up to the end of the bytes for a last line with no terminator, as Python's
+ * <code>readlines()</code> splits them; a <code>"\r\n"</code> line keeps its <code>'\r'</code>. Lines are compared as bytes, so no charset is needed until a
+ * line is turned into text with {@link #line(int, Charset)}. Every line has a 64-bit hash of its bytes, computed in the same pass that finds the line breaks.
+ * </p>
+ * <p>
+ * A mapped file stays mapped until the sequence is garbage collected. Offsets are <code>int</code>s, so a file is limited to 2 GB.
+ * </p>
+ */
+public final class LineSequence {
+
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    /** the bytes, from 0 to their limit; never moved or changed */
+    private final ByteBuffer bytes;
+
+    /** line -&gt; offset of its first byte; one more than there are lines, the last being the length */
+    private final int[] starts;
+
+    /** line -&gt; hash of its bytes */
+    private final long[] hashes;
+
+    private LineSequence(ByteBuffer bytes, int[] starts, long[] hashes) {
+        this.bytes = bytes;
+        this.starts = starts;
+        this.hashes = hashes;
+    }
+
+    /**
+     * Memory-map a file read-only and find its lines.
+     *
+     * @param file
+     *            the file
+     * @return its lines
+     * @throws IOException
+     *             if the file cannot be read, or is larger than 2 GB
+     */
+    public static LineSequence map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to map: " + size + " bytes");
+            }
+            // the mapping stays valid after the channel is closed
+            return of(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Find the lines of a buffer's remaining bytes. The bytes are not copied, and must not be changed while the sequence is in use.
+     *
+     * @param buffer
+     *            the bytes; its position and limit are not changed
+     * @return their lines
+     */
+    public static LineSequence of(ByteBuffer buffer) {
+        ByteBuffer bytes = buffer.slice();
+        int length = bytes.limit();
+        int[] starts = new int[16];
+        long[] hashes = new long[16];
+        int lines = 0;
+        int start = 0;
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < length; i++) {
+            byte b = bytes.get(i);
+            hash = (hash ^ (b & 0xFF)) * FNV_PRIME;
+            if (b == '\n' || i == length - 1) {
+                if (lines + 1 == starts.length) {
+                    starts = Arrays.copyOf(starts, starts.length * 2);
+                    hashes = Arrays.copyOf(hashes, hashes.length * 2);
+                }
+                starts[lines] = start;
+                hashes[lines] = mix(hash);
+                lines++;
+                start = i + 1;
+                hash = FNV_OFFSET_BASIS;
+            }
+        }
+        starts[lines] = length;
+        return new LineSequence(bytes, Arrays.copyOf(starts, lines + 1), Arrays.copyOf(hashes, lines));
+    }
+
+    /**
+     * Finish an FNV-1a hash so that its low bits, which pick the slot in a hash table, depend on every byte.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ h >>> 33;
+    }
+
+    /**
+     * @return the number of lines
+     */
+    public int size() {
+        return hashes.length;
+    }
+
+    /**
+     * @param line
+     *            a line number, from 0
+     * @return the offset of the line's first byte
+     */
+    public int start(int line) {
+        Objects.checkIndex(line, hashes.length);
+        return starts[line];
+    }
+
+    /**
+     * @param line
+     *            a line number, from 0
+     * @return the offset just past the line's last byte, including its terminator
+     */
+    public int end(int line) {
+        Objects.checkIndex(line, hashes.length);
+        return starts[line + 1];
+    }
+
+    /**
+     * @param line
+     *            a line number, from 0
+     * @return the 64-bit hash of the line's bytes; equal lines have equal hashes, in this or any other sequence
+     */
+    public long hash(int line) {
+        return hashes[Objects.checkIndex(line, hashes.length)];
+    }
+
+    /**
+     * @param line
+     *            a line number, from 0
+     * @param charset
+     *            the charset of the bytes
+     * @return the line as text, with its terminator
+     */
+    public String line(int line, Charset charset) {
+        int start = start(line);
+        byte[] b = new byte[starts[line + 1] - start];
+        bytes.duplicate().position(start).get(b);
+        return new String(b, charset);
+    }
+
+    /**
+     * @return true if the bytes of a line are those of a line of another sequence
+     */
+    boolean sameLine(int line, LineSequence other, int otherLine) {
+        int start = starts[line];
+        int end = starts[line + 1];
+        int otherStart = other.starts[otherLine];
+        int otherEnd = other.starts[otherLine + 1];
+        if (end - start != otherEnd - otherStart) {
+            return false;
+        }
+        ByteBuffer x = bytes.duplicate().position(start).limit(end);
+        ByteBuffer y = other.bytes.duplicate().position(otherStart).limit(otherEnd);
+        return x.mismatch(y) < 0;
+    }
+}
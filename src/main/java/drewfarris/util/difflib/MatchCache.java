@@ -0,0 +1,301 @@
+package drewfarris.util.difflib;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A bounded, thread-safe cache of {@link SequenceMatcher#ratio()} and, optionally, {@link SequenceMatcher#getPackedMatchingBlocks()}, for services that see the
+ * same pairs of sequences again and again.
+ * <p>
+ * An entry is keyed by the contents of both sequences together with the junk filter, compared by identity, and the autoJunk setting, since these decide the
+ * result. The key does not hold the sequences: each is reduced to its length and a 64-bit hash of its chars, so a cache of long strings costs no more than a
+ * cache of short ones. Two different pairs share an entry only if both of their sequences have equal lengths and colliding hashes, which for the
+ * non-adversarial inputs this cache is meant for happens with a probability of about 2<sup>-128</sup> per pair of keys. Every entry has a weight, an estimate
+ * in bytes of the memory it holds: a fixed overhead, plus the arrays of the matching blocks if they are kept. When the total weight exceeds the maximum, the
+ * least recently used entries are evicted until it fits again.
+ * </p>
+ * <p>
+ * Lookups and updates are serialized on the cache, but results are computed outside the lock, so a slow comparison never blocks other threads. Two threads that
+ * miss on the same pair at once may both compute it; the results are identical, and the second simply replaces the first.
+ * </p>
+ */
+public final class MatchCache {
+
+    /** the estimated bytes held by an entry apart from its blocks: the entry, key, map node and linked-list links */
+    static final int ENTRY_OVERHEAD = 128;
+
+    /** the estimated bytes held by the matching blocks apart from their elements: the object and the headers of its three arrays */
+    static final int BLOCKS_OVERHEAD = 64;
+
+    private final long maxWeight;
+    private final boolean keepMatchingBlocks;
+
+    /** entries in access order, least recently used first; guarded by this */
+    private final LinkedHashMap<Key,Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** guarded by this */
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Create a cache that keeps ratios only.
+     *
+     * @param maxWeight
+     *            the most memory, in estimated bytes, that entries may hold
+     */
+    public MatchCache(long maxWeight) {
+        this(maxWeight, false);
+    }
+
+    /**
+     * Create a cache.
+     *
+     * @param maxWeight
+     *            the most memory, in estimated bytes, that entries may hold
+     * @param keepMatchingBlocks
+     *            true to keep the matching blocks of every pair, which serves {@link #getMatchingBlocks(SequenceMatcher.JunkFilter, String, String, boolean)}
+     *            from the cache at the cost of heavier entries; false to keep only ratios
+     */
+    public MatchCache(long maxWeight, boolean keepMatchingBlocks) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("maxWeight must be > 0");
+        }
+        this.maxWeight = maxWeight;
+        this.keepMatchingBlocks = keepMatchingBlocks;
+    }
+
+    /**
+     * @param junkFilter
+     *            the junk filter, or null
+     * @param a
+     *            the first sequence
+     * @param b
+     *            the second sequence
+     * @param autoJunk
+     *            set false to disable the "automatic junk heuristic" that treats popular elements as junk
+     * @return the ratio of <code>new SequenceMatcher(junkFilter, a, b, autoJunk)</code>, from the cache if it is there
+     */
+    public double ratio(SequenceMatcher.JunkFilter junkFilter, String a, String b, boolean autoJunk) {
+        Key key = new Key(junkFilter, a, b, autoJunk);
+        Entry entry = lookup(key, false);
+        if (entry != null) {
+            return entry.ratio;
+        }
+        SequenceMatcher s = new SequenceMatcher(junkFilter, a, b, autoJunk);
+        double ratio = s.ratio();
+        store(key, new Entry(ratio, keepMatchingBlocks ? s.getPackedMatchingBlocks() : null));
+        return ratio;
+    }
+
+    /**
+     * @param junkFilter
+     *            the junk filter, or null
+     * @param a
+     *            the first sequence
+     * @param b
+     *            the second sequence
+     * @param autoJunk
+     *            set false to disable the "automatic junk heuristic" that treats popular elements as junk
+     * @return the matching blocks of <code>new SequenceMatcher(junkFilter, a, b, autoJunk)</code>, from the cache if they are there; a cache that does not keep
+     *         matching blocks computes them every time, but still keeps the ratio
+     */
+    public PackedMatchingBlocks getMatchingBlocks(SequenceMatcher.JunkFilter junkFilter, String a, String b, boolean autoJunk) {
+        Key key = new Key(junkFilter, a, b, autoJunk);
+        Entry entry = lookup(key, true);
+        if (entry != null && entry.matchingBlocks != null) {
+            return entry.matchingBlocks;
+        }
+        SequenceMatcher s = new SequenceMatcher(junkFilter, a, b, autoJunk);
+        PackedMatchingBlocks matchingBlocks = s.getPackedMatchingBlocks();
+        if (entry == null) {
+            store(key, new Entry(s.ratio(), keepMatchingBlocks ? matchingBlocks : null));
+        }
+        return matchingBlocks;
+    }
+
+    /**
+     * Remove every entry. The statistics are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * @return a snapshot of the cache's statistics
+     */
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, entries.size(), weight);
+    }
+
+    /**
+     * @return the entry for key, or null; a lookup that needs blocks only counts as a hit if the entry has them
+     */
+    private synchronized Entry lookup(Key key, boolean needBlocks) {
+        Entry entry = entries.get(key);
+        if (entry != null && (!needBlocks || entry.matchingBlocks != null)) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return entry;
+    }
+
+    private synchronized void store(Key key, Entry entry) {
+        long entryWeight = weight(entry);
+        if (entryWeight > maxWeight) {
+            // it would only push everything else out and then be evicted itself
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            weight -= weight(previous);
+        }
+        weight += entryWeight;
+        Iterator<Map.Entry<Key,Entry>> eldest = entries.entrySet().iterator();
+        while (weight > maxWeight) {
+            Map.Entry<Key,Entry> evicted = eldest.next();
+            weight -= weight(evicted.getValue());
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private static long weight(Entry entry) {
+        long weight = ENTRY_OVERHEAD;
+        if (entry.matchingBlocks != null) {
+            weight += BLOCKS_OVERHEAD + (long) Integer.BYTES * entry.matchingBlocks.arrayElements();
+        }
+        return weight;
+    }
+
+    /**
+     * Counters of a {@link MatchCache}, taken at one moment.
+     */
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int size;
+        private final long weight;
+
+        Stats(long hits, long misses, long evictions, int size, long weight) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+            this.weight = weight;
+        }
+
+        /**
+         * @return the number of lookups that found an entry
+         */
+        public long hits() {
+            return hits;
+        }
+
+        /**
+         * @return the number of lookups that found none
+         */
+        public long misses() {
+            return misses;
+        }
+
+        /**
+         * @return the number of entries removed to keep within the maximum weight
+         */
+        public long evictions() {
+            return evictions;
+        }
+
+        /**
+         * @return the number of entries
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return the total weight of the entries, in estimated bytes
+         */
+        public long weight() {
+            return weight;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", size=" + size + ", weight=" + weight + "}";
+        }
+    }
+
+    /**
+     * @return a 64-bit hash of the chars of s; each char is mixed into the state, which is finished with the finalizer of MurmurHash3, so every char affects
+     *         every bit
+     */
+    static long hash64(String s) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < s.length(); i++) {
+            h = Long.rotateLeft(h ^ s.charAt(i) * 0xC2B2AE3D27D4EB4FL, 31) * 0x87C37B91114253D5L;
+        }
+        h ^= s.length();
+        h = (h ^ h >>> 33) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ h >>> 33) * 0xC4CEB9FE1A85EC53L;
+        return h ^ h >>> 33;
+    }
+
+    private static final class Key {
+        final SequenceMatcher.JunkFilter junkFilter;
+        final int aLength;
+        final int bLength;
+        final long aHash;
+        final long bHash;
+        final boolean autoJunk;
+        final int hash;
+
+        Key(SequenceMatcher.JunkFilter junkFilter, String a, String b, boolean autoJunk) {
+            Objects.requireNonNull(a, "a");
+            Objects.requireNonNull(b, "b");
+            this.junkFilter = junkFilter;
+            this.aLength = a.length();
+            this.bLength = b.length();
+            this.aHash = hash64(a);
+            this.bHash = hash64(b);
+            this.autoJunk = autoJunk;
+            this.hash = (Long.hashCode(aHash) * 31 + Long.hashCode(bHash)) * 31 + System.identityHashCode(junkFilter) * 2 + (autoJunk ? 1 : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return aHash == other.aHash && bHash == other.bHash && aLength == other.aLength && bLength == other.bLength && junkFilter == other.junkFilter
+                            && autoJunk == other.autoJunk;
+        }
+    }
+
+    private static final class Entry {
+        final double ratio;
+
+        /** the blocks, or null if they are not kept */
+        final PackedMatchingBlocks matchingBlocks;
+
+        Entry(double ratio, PackedMatchingBlocks matchingBlocks) {
+            this.ratio = ratio;
+            this.matchingBlocks = matchingBlocks;
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package drewfarris.util.difflib;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Groups of near-duplicate strings: the connected components of the graph that links two strings when their {@link SequenceMatcher#ratio()} is at least a
+ * threshold.
+ * <p>
+ * Comparing every pair is quadratic, so candidate pairs are generated with a {@link QGramIndex}. Each string is taken in turn as a probe, and the posting lists
+ * of its q-grams are walked to count the q-grams it shares with every earlier string. Only the earlier strings whose length can reach the threshold, see
+ * {@link SequenceMatcher#realQuickRatio()}, and which share at least {@link QGramIndex#minSharedGrams(int, int, int, double)} q-grams with the probe are
+ * candidates. When that bound is not positive, which happens for strings that are short compared with q or for low thresholds, the q-grams cannot rule a pair
+ * out, and every earlier string of a suitable length is a candidate. A candidate that is already in the probe's component is skipped; otherwise its ratio is
+ * checked with {@link SequenceMatcher#ratioIfAbove(double)} against the probe, compiled once, and a pair that reaches the threshold joins the two components.
+ * </p>
+ * <p>
+ * Probes are processed in blocks, claimed in turn by one {@link ForkJoinPool} task per worker thread until none are left, so the blocks stay balanced although
+ * later probes have more earlier strings to count. Each task owns a matcher and a set of counters for all of its blocks, so there are only ever as many as
+ * there are worker threads, however many blocks there are. Components are kept in a lock-free union-find shared by the tasks, and no list of pairs is ever
+ * built, so memory stays proportional to the input however many pairs are similar. The components do not depend on the order in which pairs are found, so the
+ * result is the same with or without a pool.
+ * </p>
+ * <p>
+ * A pair is compared with the earlier string as sequence a and the later as sequence b, as by <code>setSequences(strings.get(i), strings.get(j))</code> for
+ * <code>i &lt; j</code>.
+ * </p>
+ */
+public final class NearDuplicateClusters {
+
+    /** the q-gram length used when none is given */
+    public static final int DEFAULT_Q = QGramIndex.DEFAULT_Q;
+
+    /** blocks of probes per processor, so that the workers finish together */
+    private static final int BLOCKS_PER_PROCESSOR = 4;
+
+    /** the fewest probes in a block */
+    private static final int MIN_BLOCK_PROBES = 64;
+
+    /** string -&gt; its cluster */
+    private final int[] clusterOf;
+
+    /** cluster -&gt; start of its run in {@link #members}; has one trailing element */
+    private final int[] clusterOffsets;
+
+    /** string indices grouped by cluster, ascending within each cluster */
+    private final int[] members;
+
+    private NearDuplicateClusters(int[] roots) {
+        int size = roots.length;
+        this.clusterOf = new int[size];
+        int clusters = 0;
+        for (int i = 0; i < size; i++) {
+            // the root of a component is its smallest member, so clusters are numbered in order of their first member
+            clusterOf[i] = roots[i] == i ? clusters++ : clusterOf[roots[i]];
+        }
+        this.clusterOffsets = new int[clusters + 1];
+        for (int i = 0; i < size; i++) {
+            clusterOffsets[clusterOf[i] + 1]++;
+        }
+        for (int c = 0; c < clusters; c++) {
+            clusterOffsets[c + 1] += clusterOffsets[c];
+        }
+        this.members = new int[size];
+        int[] next = Arrays.copyOf(clusterOffsets, clusters);
+        for (int i = 0; i < size; i++) {
+            members[next[clusterOf[i]]++] = i;
+        }
+    }
+
+    /**
+     * Cluster strings with {@link #DEFAULT_Q}-grams and the default junk handling, no junk filter and the "automatic junk heuristic".
+     *
+     * @param strings
+     *            the strings to cluster
+     * @param threshold
+     *            the smallest ratio that links two strings, in <code>[0, 1]</code>
+     * @param pool
+     *            the pool to process blocks of probes in, or null to process them on the calling thread
+     * @return the clusters
+     */
+    public static NearDuplicateClusters compute(List<String> strings, double threshold, ForkJoinPool pool) {
+        return compute(strings, null, true, threshold, DEFAULT_Q, pool);
+    }
+
+    /**
+     * Cluster strings.
+     *
+     * @param strings
+     *            the strings to cluster
+     * @param junkFilter
+     *            the junk filter for sequence b of each comparison, or null
+     * @param autoJunk
+     *            set false to disable the "automatic junk heuristic" that treats popular elements as junk
+     * @param threshold
+     *            the smallest ratio that links two strings, in <code>[0, 1]</code>
+     * @param q
+     *            the number of characters in a q-gram, from 1 to 4; longer q-grams prune more pairs of long strings, shorter ones more pairs of short strings
+     * @param pool
+     *            the pool to process blocks of probes in, or null to process them on the calling thread
+     * @return the clusters
+     */
+    public static NearDuplicateClusters compute(List<String> strings, SequenceMatcher.JunkFilter junkFilter, boolean autoJunk, double threshold, int q,
+                    ForkJoinPool pool) {
+        if (threshold < 0.0 || threshold > 1.0) {
+            throw new IllegalArgumentException("threshold must be in [0.0, 1.0]");
+        }
+        Job job = new Job(strings, junkFilter, autoJunk, threshold, q);
+        int size = job.strings.length;
+        int parallelism = pool == null ? 1 : pool.getParallelism();
+        int blockProbes = Math.max(MIN_BLOCK_PROBES, (size + parallelism * BLOCKS_PER_PROCESSOR - 1) / (parallelism * BLOCKS_PER_PROCESSOR));
+        int blocks = (size + blockProbes - 1) / blockProbes;
+        ProbeTask task = new ProbeTask(job, 0, Math.min(parallelism, blocks), blockProbes, blocks);
+        if (pool == null) {
+            task.compute();
+        } else {
+            pool.invoke(task);
+        }
+        int[] roots = new int[size];
+        for (int i = 0; i < size; i++) {
+            roots[i] = job.find(i);
+        }
+        return new NearDuplicateClusters(roots);
+    }
+
+    /**
+     * @return the number of clusters, including those of a single string
+     */
+    public int count() {
+        return clusterOffsets.length - 1;
+    }
+
+    /**
+     * @param index
+     *            the index of a string
+     * @return the cluster of the string; clusters are numbered in order of their first member
+     */
+    public int clusterOf(int index) {
+        return clusterOf[Objects.checkIndex(index, clusterOf.length)];
+    }
+
+    /**
+     * @param cluster
+     *            a cluster
+     * @return the number of strings in the cluster
+     */
+    public int size(int cluster) {
+        Objects.checkIndex(cluster, count());
+        return clusterOffsets[cluster + 1] - clusterOffsets[cluster];
+    }
+
+    /**
+     * @param cluster
+     *            a cluster
+     * @param k
+     *            the position of a member within the cluster, less than {@link #size(int)}
+     * @return the index of the member's string; the members of a cluster are in ascending order
+     */
+    public int member(int cluster, int k) {
+        return members[clusterOffsets[cluster] + Objects.checkIndex(k, size(cluster))];
+    }
+
+    /**
+     * The shared inputs of one computation, and the union-find that the tasks build.
+     */
+    private static final class Job {
+        final String[] strings;
+        final SequenceMatcher.JunkFilter junkFilter;
+        final boolean autoJunk;
+        final double threshold;
+        final QGramIndex index;
+
+        /** string -&gt; its parent in the union-find; a root is its own parent, and is the smallest member of its component */
+        final AtomicIntegerArray parents;
+
+        /** the next block of probes to be claimed by a task */
+        final AtomicInteger nextBlock = new AtomicInteger();
+
+        Job(List<String> strings, SequenceMatcher.JunkFilter junkFilter, boolean autoJunk, double threshold, int q) {
+            this.index = new QGramIndex(strings, q);
+            this.strings = index.words;
+            this.junkFilter = junkFilter;
+            this.autoJunk = autoJunk;
+            this.threshold = threshold;
+            int size = this.strings.length;
+
+            this.parents = new AtomicIntegerArray(size);
+            for (int i = 0; i < size; i++) {
+                parents.set(i, i);
+            }
+        }
+
+        /**
+         * @return the root of x's component, halving the path to it on the way
+         */
+        int find(int x) {
+            int parent = parents.get(x);
+            while (parent != x) {
+                int grandparent = parents.get(parent);
+                if (grandparent != parent) {
+                    // another thread may have moved x already; either way x ends up closer to its root
+                    parents.compareAndSet(x, parent, grandparent);
+                }
+                x = grandparent;
+                parent = parents.get(x);
+            }
+            return x;
+        }
+
+        /**
+         * Join the components of x and y. The larger root is always linked below the smaller, so no cycle can form when threads race.
+         */
+        void union(int x, int y) {
+            while (true) {
+                int rx = find(x);
+                int ry = find(y);
+                if (rx == ry) {
+                    return;
+                }
+                if (rx < ry) {
+                    int t = rx;
+                    rx = ry;
+                    ry = t;
+                }
+                if (parents.compareAndSet(rx, rx, ry)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a range of workers, splitting it in half until a single worker is left. A worker claims blocks of probes from the job until none are left, all with
+     * the one scratch state it owns.
+     */
+    private static final class ProbeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Job job;
+        private final int firstWorker;
+        private final int endWorker;
+        private final int blockProbes;
+        private final int blocks;
+
+        ProbeTask(Job job, int firstWorker, int endWorker, int blockProbes, int blocks) {
+            this.job = job;
+            this.firstWorker = firstWorker;
+            this.endWorker = endWorker;
+            this.blockProbes = blockProbes;
+            this.blocks = blocks;
+        }
+
+        @Override
+        protected void compute() {
+            if (endWorker - firstWorker > 1) {
+                int middle = (firstWorker + endWorker) >>> 1;
+                invokeAll(new ProbeTask(job, firstWorker, middle, blockProbes, blocks), new ProbeTask(job, middle, endWorker, blockProbes, blocks));
+                return;
+            }
+            if (endWorker == firstWorker) {
+                return;
+            }
+            Scratch scratch = new Scratch(job);
+            int size = job.strings.length;
+            for (int block = job.nextBlock.getAndIncrement(); block < blocks; block = job.nextBlock.getAndIncrement()) {
+                int lo = block * blockProbes;
+                scratch.probe(lo, Math.min(size, lo + blockProbes));
+            }
+        }
+    }
+
+    /**
+     * The scratch state of one worker: shared q-gram counters, indexed by string, which are reset after each probe by walking the strings touched, the minimum
+     * counts of each bucket for the current probe, and a matcher. It is left clean after each probe, so the worker reuses it for every block it claims.
+     */
+    private static final class Scratch {
+        private final Job job;
+        private final int[] shared;
+        private final int[] touched;
+        private int touchedCount;
+        private final int[] bucketNeeds;
+        private SequenceMatcher matcher;
+
+        Scratch(Job job) {
+            this.job = job;
+            this.shared = new int[job.strings.length];
+            this.touched = new int[job.strings.length];
+            this.bucketNeeds = new int[job.index.buckets.count()];
+        }
+
+        void probe(int lo, int hi) {
+            for (int i = lo; i < hi; i++) {
+                probe(i);
+            }
+        }
+
+        private void probe(int i) {
+            Job job = this.job;
+            QGramIndex index = job.index;
+            int la = index.lengths[i];
+            CompiledSequence compiled = null;
+
+            // the shared q-grams needed from a string of each length; MAX_VALUE rules the length out, and a bound that is not positive cannot prune
+            for (int bucket = 0; bucket < bucketNeeds.length; bucket++) {
+                bucketNeeds[bucket] = QGramIndex.minSharedGrams(la, index.buckets.lengths[bucket], index.q, job.threshold);
+            }
+
+            // count the q-grams shared with every earlier string
+            for (int k = index.profileOffsets[i]; k < index.profileOffsets[i + 1]; k++) {
+                int gram = index.profileGrams[k];
+                int count = index.profileCounts[k];
+                for (int p = index.postingOffsets[gram]; p < index.postingOffsets[gram + 1]; p++) {
+                    int j = index.postingIds[p];
+                    if (j >= i) {
+                        break;
+                    }
+                    if (shared[j] == 0) {
+                        touched[touchedCount++] = j;
+                    }
+                    shared[j] += Math.min(count, index.postingCounts[p]);
+                }
+            }
+
+            // candidates found through the q-grams, in the buckets where the bound prunes
+            for (int t = 0; t < touchedCount; t++) {
+                int j = touched[t];
+                int need = bucketNeeds[index.buckets.bucketOf(index.lengths[j])];
+                if (need > 0 && shared[j] >= need) {
+                    compiled = verify(j, i, compiled);
+                }
+                shared[j] = 0;
+            }
+            touchedCount = 0;
+
+            // every earlier string of the buckets where it does not
+            for (int bucket = 0; bucket < bucketNeeds.length; bucket++) {
+                if (bucketNeeds[bucket] > 0) {
+                    continue;
+                }
+                for (int k = index.buckets.offsets[bucket]; k < index.buckets.offsets[bucket + 1]; k++) {
+                    int j = index.buckets.members[k];
+                    if (j >= i) {
+                        break;
+                    }
+                    compiled = verify(j, i, compiled);
+                }
+            }
+        }
+
+        /**
+         * Link strings j and i, with j &lt; i, if they are not already in one component and their ratio reaches the threshold.
+         *
+         * @return the compiled string i, compiled now if it was not yet
+         */
+        private CompiledSequence verify(int j, int i, CompiledSequence compiled) {
+            Job job = this.job;
+            if (job.find(j) == job.find(i)) {
+                return compiled;
+            }
+            if (compiled == null) {
+                compiled = SequenceMatcher.compile(job.strings[i], job.junkFilter, job.autoJunk);
+                if (matcher == null) {
+                    matcher = new SequenceMatcher("", compiled);
+                } else {
+                    matcher.setSequenceB(compiled);
+                }
+            }
+            matcher.setSequenceA(job.strings[j]);
+            if (matcher.quickRatio() >= job.threshold && matcher.ratioIfAbove(job.threshold) >= 0) {
+                job.union(j, i);
+            }
+            return compiled;
+        }
+
+    }
+}
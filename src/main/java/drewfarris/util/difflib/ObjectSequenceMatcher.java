@@ -0,0 +1,240 @@
+package drewfarris.util.difflib;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * {@link SequenceMatcher} for lists of any element type, such as the lines of two files or the tokens of two documents.
+ * <p>
+ * Elements are compared with {@link Object#equals(Object)} and {@link Object#hashCode()}, as Python's difflib compares hashable elements, but only once per
+ * element: when a sequence is set, each element of b is interned to a dense <code>int</code> id, and each element of a is given the id of the equal element of
+ * b, or an id that matches nothing if b has none. The matching itself then runs on the ids in an {@link IntSequenceMatcher}, with the same b2j index, junk and
+ * popular element handling, and longest match search as {@link SequenceMatcher}, so the results are those difflib would give for the same lists.
+ * </p>
+ * <p>
+ * The lists are copied when they are set, so changing a list afterwards has no effect until it is set again.
+ * </p>
+ *
+ * @param <T>
+ *            the type of the elements
+ */
+public final class ObjectSequenceMatcher<T> {
+
+    /** the id of an element of a that does not occur in b */
+    private static final int UNMATCHED = -1;
+
+    private final JunkFilter<? super T> junkFilter;
+
+    /** a copy of the first sequence, for giving it new ids when b changes */
+    private List<T> a = new ArrayList<>();
+
+    /** element of b -&gt; its id */
+    private Map<T,Integer> ids = new HashMap<>();
+
+    /** id -&gt; element of b */
+    private List<T> elements = new ArrayList<>();
+
+    private final IntSequenceMatcher matcher;
+
+    /**
+     * Construct an ObjectSequenceMatcher with no junk filter and the "automatic junk heuristic" enabled.
+     *
+     * @param a
+     *            the first of two sequences to be compared
+     * @param b
+     *            the second of two sequences to be compared
+     */
+    public ObjectSequenceMatcher(List<? extends T> a, List<? extends T> b) {
+        this(null, a, b, true);
+    }
+
+    /**
+     * Construct an ObjectSequenceMatcher.
+     *
+     * @param junkFilter
+     *            true for the elements of b that are junk, or null if no element is junk; called once per distinct element of b
+     * @param a
+     *            the first of two sequences to be compared
+     * @param b
+     *            the second of two sequences to be compared
+     * @param autoJunk
+     *            set false to disable the "automatic junk heuristic" that treats popular elements as junk
+     */
+    public ObjectSequenceMatcher(JunkFilter<? super T> junkFilter, List<? extends T> a, List<? extends T> b, boolean autoJunk) {
+        this.junkFilter = junkFilter;
+        this.matcher = new IntSequenceMatcher(junkFilter == null ? null : id -> junkFilter.isJunk(elements.get(id)), new int[0], new int[0], autoJunk);
+        setSequences(a, b);
+    }
+
+    /**
+     * Set the two sequences to be compared
+     *
+     * @param a
+     *            the first sequence to be compared
+     * @param b
+     *            the second sequence to be compared
+     */
+    public void setSequences(List<? extends T> a, List<? extends T> b) {
+        this.a = new ArrayList<>(Objects.requireNonNull(a, "a"));
+        setSequenceB(b);
+    }
+
+    /**
+     * Set the first sequence to be compared.
+     * <p>
+     * The second sequence to be compared is not changed.
+     * </p>
+     *
+     * @param a
+     *            the first sequence to be compared
+     */
+    public void setSequenceA(List<? extends T> a) {
+        this.a = new ArrayList<>(Objects.requireNonNull(a, "a"));
+        internA();
+    }
+
+    /**
+     * Give each element of a the id of the equal element of b.
+     */
+    private void internA() {
+        int[] ids = new int[a.size()];
+        int i = 0;
+        for (T element : a) {
+            Integer id = this.ids.get(element);
+            ids[i++] = id == null ? UNMATCHED : id;
+        }
+        matcher.setSequenceA(ids);
+    }
+
+    /**
+     * Set the second sequence to be compared. The first sequence is given new ids, so this costs a lookup per element of a as well as of b.
+     * <p>
+     * The first sequence to be compared is not changed.
+     * </p>
+     *
+     * @param b
+     *            the second sequence to be compared
+     */
+    public void setSequenceB(List<? extends T> b) {
+        Objects.requireNonNull(b, "b");
+        Map<T,Integer> ids = new HashMap<>();
+        List<T> elements = new ArrayList<>();
+        int[] bIds = new int[b.size()];
+        int j = 0;
+        for (T element : b) {
+            Integer id = ids.get(element);
+            if (id == null) {
+                id = elements.size();
+                ids.put(element, id);
+                elements.add(element);
+            }
+            bIds[j++] = id;
+        }
+        this.ids = ids;
+        this.elements = elements;
+        matcher.setSequenceB(bIds);
+        internA();
+    }
+
+    /**
+     * @return the distinct elements of b that are junk, in order of their first occurrence; popular elements are not included
+     */
+    public Set<T> getBJunk() {
+        Set<T> junk = new LinkedHashSet<>();
+        if (junkFilter != null) {
+            for (int id = 0; id < elements.size(); id++) {
+                if (matcher.isBJunk(id)) {
+                    junk.add(elements.get(id));
+                }
+            }
+        }
+        return junk;
+    }
+
+    /**
+     * Find the longest matching block in <code>a[alo:ahi]</code> and <code>b[blo:bhi]</code>, as {@link SequenceMatcher#findLongestMatch(int, int, int, int)}
+     * does.
+     *
+     * @param alo
+     *            the start of the range of a
+     * @param ahi
+     *            the end of the range of a
+     * @param blo
+     *            the start of the range of b
+     * @param bhi
+     *            the end of the range of b
+     * @return the longest matching block
+     */
+    public SequenceMatcher.Match findLongestMatch(int alo, int ahi, int blo, int bhi) {
+        return matcher.findLongestMatch(alo, ahi, blo, bhi);
+    }
+
+    /**
+     * @return the matching blocks, see {@link SequenceMatcher#getMatchingBlocks()}
+     */
+    public List<SequenceMatcher.Match> getMatchingBlocks() {
+        return matcher.getMatchingBlocks();
+    }
+
+    /**
+     * @return the matching blocks, see {@link SequenceMatcher#getPackedMatchingBlocks()}
+     */
+    public PackedMatchingBlocks getPackedMatchingBlocks() {
+        return matcher.getPackedMatchingBlocks();
+    }
+
+    /**
+     * @return the opcodes, see {@link SequenceMatcher#getOpcodes()}
+     */
+    public List<SequenceMatcher.Opcode> getOpcodes() {
+        return matcher.getOpcodes();
+    }
+
+    /**
+     * @return the opcodes, see {@link SequenceMatcher#getPackedOpcodes()}
+     */
+    public PackedOpcodes getPackedOpcodes() {
+        return matcher.getPackedOpcodes();
+    }
+
+    /**
+     * @return a measure of the sequences' similarity, see {@link SequenceMatcher#ratio()}
+     */
+    public double ratio() {
+        return matcher.ratio();
+    }
+
+    /**
+     * @return an upper bound on {@link #ratio()}, see {@link SequenceMatcher#quickRatio()}
+     */
+    public double quickRatio() {
+        return matcher.quickRatio();
+    }
+
+    /**
+     * @return an upper bound on {@link #quickRatio()}, see {@link SequenceMatcher#realQuickRatio()}
+     */
+    public double realQuickRatio() {
+        return matcher.realQuickRatio();
+    }
+
+    /**
+     * Junk filter over elements
+     *
+     * @param <T>
+     *            the type of the elements
+     */
+    public interface JunkFilter<T> {
+        /**
+         * @param element
+         *            an element of b
+         * @return true if the element should be considered junk
+         */
+        boolean isJunk(T element);
+    }
+}
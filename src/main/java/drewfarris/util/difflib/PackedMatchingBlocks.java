@@ -0,0 +1,176 @@
+package drewfarris.util.difflib;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * The matching blocks of a {@link SequenceMatcher}, stored as parallel <code>int[]</code>s rather than one {@link SequenceMatcher.Match} per block.
+ * <p>
+ * Block <code>index</code> is the triple <code>(aOffset(index), bOffset(index), size(index))</code>, meaning <code>a[i:i+n] == b[j:j+n]</code>, with the same
+ * ordering and sentinel guarantees as {@link SequenceMatcher#getMatchingBlocks()}. Callers that only need to iterate over the blocks can use the indexed
+ * accessors and pay no per-block object cost; {@link #asList()} provides a {@link List} view for everyone else.
+ * </p>
+ * <p>
+ * Instances are immutable: every field is final, and the arrays are sized to the blocks when they are built and never written after, so an instance can be
+ * shared between threads, as {@link MatchCache} does.
+ * </p>
+ */
+public final class PackedMatchingBlocks {
+
+    private final int[] aOffsets;
+    private final int[] bOffsets;
+    private final int[] sizes;
+
+    /** the view returned by {@link #asList()} */
+    private final List<SequenceMatcher.Match> list = new MatchList();
+
+    /**
+     * Takes ownership of the arrays, which must all have exactly one element per block.
+     */
+    private PackedMatchingBlocks(int[] aOffsets, int[] bOffsets, int[] sizes) {
+        this.aOffsets = aOffsets;
+        this.bOffsets = bOffsets;
+        this.sizes = sizes;
+    }
+
+    /**
+     * @return the total number of elements in the packed arrays, for callers that estimate the memory an instance holds
+     */
+    int arrayElements() {
+        return aOffsets.length + bOffsets.length + sizes.length;
+    }
+
+    /**
+     * @return the number of blocks, including the sentinel
+     */
+    public int count() {
+        return sizes.length;
+    }
+
+    /**
+     * @param index
+     *            the index of a block
+     * @return the start of the block in a
+     */
+    public int aOffset(int index) {
+        return aOffsets[Objects.checkIndex(index, sizes.length)];
+    }
+
+    /**
+     * @param index
+     *            the index of a block
+     * @return the start of the block in b
+     */
+    public int bOffset(int index) {
+        return bOffsets[Objects.checkIndex(index, sizes.length)];
+    }
+
+    /**
+     * @param index
+     *            the index of a block
+     * @return the number of elements in the block
+     */
+    public int size(int index) {
+        return sizes[Objects.checkIndex(index, sizes.length)];
+    }
+
+    /**
+     * @return the total number of matched elements, the <code>M</code> in {@link SequenceMatcher#ratio()}
+     */
+    public int totalSize() {
+        int total = 0;
+        for (int size : sizes) {
+            total += size;
+        }
+        return total;
+    }
+
+    /**
+     * A read-only view of the blocks. No copy is made; each {@link List#get(int)} creates a {@link SequenceMatcher.Match} from the packed arrays.
+     *
+     * @return the blocks as a list
+     */
+    public List<SequenceMatcher.Match> asList() {
+        return list;
+    }
+
+    @Override
+    public String toString() {
+        return asList().toString();
+    }
+
+    private final class MatchList extends AbstractList<SequenceMatcher.Match> implements RandomAccess {
+        @Override
+        public SequenceMatcher.Match get(int index) {
+            Objects.checkIndex(index, sizes.length);
+            return new SequenceMatcher.Match(aOffsets[index], bOffsets[index], sizes[index]);
+        }
+
+        @Override
+        public int size() {
+            return sizes.length;
+        }
+    }
+
+    /**
+     * Collects blocks while they are being computed, then trims them into an immutable {@link PackedMatchingBlocks}.
+     */
+    static final class Builder {
+
+        private int[] aOffsets;
+        private int[] bOffsets;
+        private int[] sizes;
+        private int count;
+
+        Builder(int capacity) {
+            capacity = Math.max(capacity, 4);
+            this.aOffsets = new int[capacity];
+            this.bOffsets = new int[capacity];
+            this.sizes = new int[capacity];
+        }
+
+        /**
+         * Append a block.
+         */
+        void add(int aOffset, int bOffset, int size) {
+            if (count == aOffsets.length) {
+                int capacity = count * 2;
+                aOffsets = Arrays.copyOf(aOffsets, capacity);
+                bOffsets = Arrays.copyOf(bOffsets, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+            }
+            aOffsets[count] = aOffset;
+            bOffsets[count] = bOffset;
+            sizes[count] = size;
+            count++;
+        }
+
+        /**
+         * Append all the blocks of other.
+         */
+        void addAll(Builder other) {
+            for (int index = 0; index < other.count; index++) {
+                add(other.aOffsets[index], other.bOffsets[index], other.sizes[index]);
+            }
+        }
+
+        /**
+         * Pass the blocks collected so far to a visitor, in order.
+         */
+        void visitAll(SequenceMatcher.MatchVisitor visitor) {
+            for (int index = 0; index < count; index++) {
+                visitor.visitMatch(aOffsets[index], bOffsets[index], sizes[index]);
+            }
+        }
+
+        /**
+         * @return the blocks collected so far, in arrays of exactly their number
+         */
+        PackedMatchingBlocks build() {
+            return new PackedMatchingBlocks(Arrays.copyOf(aOffsets, count), Arrays.copyOf(bOffsets, count), Arrays.copyOf(sizes, count));
+        }
+    }
+}
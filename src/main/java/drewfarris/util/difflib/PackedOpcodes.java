@@ -0,0 +1,169 @@
+package drewfarris.util.difflib;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * The opcodes of a {@link SequenceMatcher}, stored as parallel primitive arrays rather than one {@link SequenceMatcher.Opcode} per edit.
+ * <p>
+ * Opcode <code>index</code> is the 5-tuple <code>(tag(index), i1(index), i2(index), j1(index), j2(index))</code>, as described by
+ * {@link SequenceMatcher#getOpcodes()}. Callers that only need to iterate over the opcodes can use the indexed accessors and pay no per-opcode object cost;
+ * {@link #asList()} provides a {@link List} view for everyone else.
+ * </p>
+ * <p>
+ * Instances are immutable: every field is final, and the arrays are sized to the opcodes when they are built and never written after, so an instance can be
+ * shared between threads.
+ * </p>
+ */
+public final class PackedOpcodes {
+
+    private static final SequenceMatcher.OpcodeTag[] TAGS = SequenceMatcher.OpcodeTag.values();
+
+    /** opcode -&gt; ordinal of its tag */
+    private final byte[] tags;
+    private final int[] i1s;
+    private final int[] i2s;
+    private final int[] j1s;
+    private final int[] j2s;
+
+    /** the view returned by {@link #asList()} */
+    private final List<SequenceMatcher.Opcode> list = new OpcodeList();
+
+    /**
+     * Takes ownership of the arrays, which must all have exactly one element per opcode.
+     */
+    private PackedOpcodes(byte[] tags, int[] i1s, int[] i2s, int[] j1s, int[] j2s) {
+        this.tags = tags;
+        this.i1s = i1s;
+        this.i2s = i2s;
+        this.j1s = j1s;
+        this.j2s = j2s;
+    }
+
+    /**
+     * @return the number of opcodes
+     */
+    public int count() {
+        return tags.length;
+    }
+
+    /**
+     * @param index
+     *            the index of an opcode
+     * @return the type of edit
+     */
+    public SequenceMatcher.OpcodeTag tag(int index) {
+        return TAGS[tags[Objects.checkIndex(index, tags.length)]];
+    }
+
+    /**
+     * @param index
+     *            the index of an opcode
+     * @return the start of the opcode's range in a
+     */
+    public int i1(int index) {
+        return i1s[Objects.checkIndex(index, tags.length)];
+    }
+
+    /**
+     * @param index
+     *            the index of an opcode
+     * @return the end of the opcode's range in a
+     */
+    public int i2(int index) {
+        return i2s[Objects.checkIndex(index, tags.length)];
+    }
+
+    /**
+     * @param index
+     *            the index of an opcode
+     * @return the start of the opcode's range in b
+     */
+    public int j1(int index) {
+        return j1s[Objects.checkIndex(index, tags.length)];
+    }
+
+    /**
+     * @param index
+     *            the index of an opcode
+     * @return the end of the opcode's range in b
+     */
+    public int j2(int index) {
+        return j2s[Objects.checkIndex(index, tags.length)];
+    }
+
+    /**
+     * A read-only view of the opcodes. No copy is made; each {@link List#get(int)} creates a {@link SequenceMatcher.Opcode} from the packed arrays.
+     *
+     * @return the opcodes as a list
+     */
+    public List<SequenceMatcher.Opcode> asList() {
+        return list;
+    }
+
+    private final class OpcodeList extends AbstractList<SequenceMatcher.Opcode> implements RandomAccess {
+        @Override
+        public SequenceMatcher.Opcode get(int index) {
+            Objects.checkIndex(index, tags.length);
+            return new SequenceMatcher.Opcode(TAGS[tags[index]], i1s[index], i2s[index], j1s[index], j2s[index]);
+        }
+
+        @Override
+        public int size() {
+            return tags.length;
+        }
+    }
+
+    /**
+     * Collects opcodes while they are being computed, then trims them into an immutable {@link PackedOpcodes}.
+     */
+    static final class Builder {
+
+        private byte[] tags;
+        private int[] i1s;
+        private int[] i2s;
+        private int[] j1s;
+        private int[] j2s;
+        private int count;
+
+        Builder(int capacity) {
+            capacity = Math.max(capacity, 4);
+            this.tags = new byte[capacity];
+            this.i1s = new int[capacity];
+            this.i2s = new int[capacity];
+            this.j1s = new int[capacity];
+            this.j2s = new int[capacity];
+        }
+
+        /**
+         * Append an opcode.
+         */
+        void add(SequenceMatcher.OpcodeTag tag, int i1, int i2, int j1, int j2) {
+            if (count == tags.length) {
+                int capacity = count * 2;
+                tags = Arrays.copyOf(tags, capacity);
+                i1s = Arrays.copyOf(i1s, capacity);
+                i2s = Arrays.copyOf(i2s, capacity);
+                j1s = Arrays.copyOf(j1s, capacity);
+                j2s = Arrays.copyOf(j2s, capacity);
+            }
+            tags[count] = (byte) tag.ordinal();
+            i1s[count] = i1;
+            i2s[count] = i2;
+            j1s[count] = j1;
+            j2s[count] = j2;
+            count++;
+        }
+
+        /**
+         * @return the opcodes collected so far, in arrays of exactly their number
+         */
+        PackedOpcodes build() {
+            return new PackedOpcodes(Arrays.copyOf(tags, count), Arrays.copyOf(i1s, count), Arrays.copyOf(i2s, count), Arrays.copyOf(j1s, count),
+                            Arrays.copyOf(j2s, count));
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package drewfarris.util.difflib;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An inverted index from the q-grams (substrings of q characters) of a collection of strings to the strings that contain them, for close-match queries that
+ * look at only a fraction of the collection.
+ * <p>
+ * A q-gram of up to {@link #MAX_Q} characters is packed into a <code>long</code>, 16 bits a character, and the distinct q-grams of the collection are kept in a
+ * sorted dictionary, so that a q-gram is identified by its position in it. Every string has a profile, its distinct q-gram ids in ascending order with the
+ * number of times each occurs, and every q-gram has a posting list, the ids of the strings that contain it in ascending order with the same counts. Both are
+ * stored in compressed sparse row form, in flat primitive arrays with one offset array each, and the strings are also grouped by length. The index is
+ * immutable, and queries may run concurrently.
+ * </p>
+ * <p>
+ * The number of q-grams two strings share, counting a repeated q-gram as often as it occurs in both, bounds their {@link SequenceMatcher#ratio()} from below;
+ * see {@link #minSharedGrams(int, int, int, double)}. {@link #getCloseMatches(String, int, double)} walks only the posting lists of the word's q-grams to count
+ * what it shares with each string, and computes the ratio only of the strings that share enough to reach the cutoff. Where the bound cannot prune, for lengths
+ * at which a string could reach the cutoff without sharing any q-gram, which happens for short words and low cutoffs, every string of that length is scored, so
+ * queries are fastest for cutoffs of 0.6 and above and words several times longer than q.
+ * </p>
+ */
+public final class QGramIndex {
+
+    /** the longest q-gram that fits in a <code>long</code> */
+    public static final int MAX_Q = 4;
+
+    /** the q-gram length used when none is given */
+    public static final int DEFAULT_Q = 3;
+
+    final int q;
+
+    /** the strings, in their original order */
+    final String[] words;
+
+    /** the length of every string */
+    final int[] lengths;
+
+    /** the distinct q-grams of the collection, ascending; the id of a q-gram is its position */
+    final long[] grams;
+
+    /** gram -&gt; start of its run in {@link #postingIds} and {@link #postingCounts}; has one trailing element */
+    final int[] postingOffsets;
+
+    /** the strings containing each q-gram, ascending */
+    final int[] postingIds;
+
+    /** the number of times each q-gram occurs in each string of {@link #postingIds} */
+    final int[] postingCounts;
+
+    /** string -&gt; start of its run in {@link #profileGrams} and {@link #profileCounts}; has one trailing element */
+    final int[] profileOffsets;
+
+    /** the distinct q-gram ids of each string, ascending */
+    final int[] profileGrams;
+
+    /** the number of times each q-gram of {@link #profileGrams} occurs in its string */
+    final int[] profileCounts;
+
+    /** the strings grouped by length */
+    final LengthBuckets buckets;
+
+    /**
+     * Index a collection of strings with {@link #DEFAULT_Q}-grams.
+     *
+     * @param strings
+     *            the strings to index; copied, so later changes to the list are not seen
+     */
+    public QGramIndex(List<String> strings) {
+        this(strings, DEFAULT_Q);
+    }
+
+    /**
+     * Index a collection of strings.
+     *
+     * @param strings
+     *            the strings to index; copied, so later changes to the list are not seen
+     * @param q
+     *            the number of characters in a q-gram, from 1 to {@link #MAX_Q}; longer q-grams have shorter posting lists but prune only longer words
+     */
+    public QGramIndex(List<String> strings, int q) {
+        if (q < 1 || q > MAX_Q) {
+            throw new IllegalArgumentException("q must be in [1, " + MAX_Q + "]");
+        }
+        this.q = q;
+        this.words = strings.toArray(new String[0]);
+        int size = words.length;
+        this.lengths = new int[size];
+
+        // the sorted distinct q-grams of every string, and their count for the dictionary
+        long[][] keys = new long[size][];
+        int[][] counts = new int[size][];
+        int total = 0;
+        for (int id = 0; id < size; id++) {
+            lengths[id] = words[id].length();
+            long[] sorted = grams(words[id], q);
+            int distinct = distinct(sorted);
+            keys[id] = new long[distinct];
+            counts[id] = new int[distinct];
+            runLengths(sorted, keys[id], counts[id]);
+            total += distinct;
+        }
+
+        // the dictionary: every distinct q-gram of the collection, once
+        long[] all = new long[total];
+        int at = 0;
+        for (long[] k : keys) {
+            System.arraycopy(k, 0, all, at, k.length);
+            at += k.length;
+        }
+        Arrays.sort(all);
+        this.grams = new long[distinct(all)];
+        int unique = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (i == 0 || all[i] != all[i - 1]) {
+                grams[unique++] = all[i];
+            }
+        }
+
+        // profiles, numbered against the dictionary, and the length of every posting list
+        this.profileOffsets = new int[size + 1];
+        this.profileGrams = new int[total];
+        this.profileCounts = new int[total];
+        this.postingOffsets = new int[grams.length + 1];
+        at = 0;
+        for (int s = 0; s < size; s++) {
+            for (int k = 0; k < keys[s].length; k++) {
+                int gram = Arrays.binarySearch(grams, keys[s][k]);
+                profileGrams[at] = gram;
+                profileCounts[at] = counts[s][k];
+                postingOffsets[gram + 1]++;
+                at++;
+            }
+            profileOffsets[s + 1] = at;
+            keys[s] = null;
+            counts[s] = null;
+        }
+
+        // posting lists, filled in string order so each one is ascending
+        for (int gram = 0; gram < grams.length; gram++) {
+            postingOffsets[gram + 1] += postingOffsets[gram];
+        }
+        this.postingIds = new int[total];
+        this.postingCounts = new int[total];
+        int[] next = Arrays.copyOf(postingOffsets, grams.length);
+        for (int s = 0; s < size; s++) {
+            for (int k = profileOffsets[s]; k < profileOffsets[s + 1]; k++) {
+                int to = next[profileGrams[k]]++;
+                postingIds[to] = s;
+                postingCounts[to] = profileCounts[k];
+            }
+        }
+
+        this.buckets = new LengthBuckets(words);
+    }
+
+    /**
+     * @return the number of strings in the index
+     */
+    public int size() {
+        return words.length;
+    }
+
+    /**
+     * @return the number of characters in a q-gram
+     */
+    public int getQ() {
+        return q;
+    }
+
+    /**
+     * Return the best "good enough" matches for word among the indexed strings; see {@link SequenceMatcher#getCloseMatches(String, List, int, double)}, whose
+     * result this is exactly, ties included.
+     *
+     * @param word
+     *            is a sequence for which close matches are desired (typically a string).
+     * @param n
+     *            is the maximum number of close matches to return. n must be &gt; 0.
+     * @param cutoff
+     *            is a float in <code>[0, 1]</code>. Possibilities that don't score at least that similar to word are ignored.
+     * @return The best (no more than n) matches among the possibilities are returned in a list, sorted by similarity score, most similar first.
+     */
+    public List<String> getCloseMatches(String word, int n, double cutoff) {
+        SequenceMatcher.checkCloseMatchArguments(n, cutoff);
+        int lw = word.length();
+
+        // the shared q-grams needed from a string of each length; MAX_VALUE rules the length out, and a bound that is not positive cannot prune
+        int[] needs = new int[buckets.count()];
+        for (int bucket = 0; bucket < needs.length; bucket++) {
+            needs[bucket] = minSharedGrams(buckets.lengths[bucket], lw, q, cutoff);
+        }
+
+        // shared q-gram counts of every string on the word's posting lists, as (string, count) pairs summed by string
+        long[] shared = sharedGrams(word);
+
+        // candidates, as (string, shared count) pairs in string order: those that share enough, and every string of the lengths where that cannot be told
+        long[] candidates = new long[shared.length];
+        int count = 0;
+        for (long pair : shared) {
+            int w = (int) (pair >>> 32);
+            int need = needs[buckets.bucketOf(lengths[w])];
+            if (need > 0 && (int) pair >= need) {
+                candidates[count++] = pair;
+            }
+        }
+        for (int bucket = 0; bucket < needs.length; bucket++) {
+            if (needs[bucket] > 0) {
+                continue;
+            }
+            for (int k = buckets.offsets[bucket]; k < buckets.offsets[bucket + 1]; k++) {
+                if (count == candidates.length) {
+                    candidates = Arrays.copyOf(candidates, Math.max(16, count * 2));
+                }
+                int w = buckets.members[k];
+                candidates[count++] = (long) w << 32 | sharedCount(shared, w);
+            }
+        }
+        Arrays.sort(candidates, 0, count);
+
+        // score in string order, so that a later string loses a tie as in getCloseMatches; the cutoff rises as the heap fills, and with it the q-grams needed
+        TopMatches result = new TopMatches(n, cutoff);
+        SequenceMatcher s = new SequenceMatcher("", SequenceMatcher.compile(word, null, true));
+        for (int c = 0; c < count; c++) {
+            int w = (int) (candidates[c] >>> 32);
+            double threshold = result.threshold();
+            if (threshold > cutoff && (int) candidates[c] < minSharedGrams(lengths[w], lw, q, threshold)) {
+                continue;
+            }
+            s.setSequenceA(words[w]);
+            if (result.admits(s.realQuickRatio()) && result.admits(s.quickRatio())) {
+                double ratio = s.ratioIfAbove(threshold);
+                if (ratio >= 0) {
+                    result.offer(ratio, w, words[w]);
+                }
+            }
+        }
+        return result.words();
+    }
+
+    /**
+     * @return (string, shared count) pairs, packed as <code>string &lt;&lt; 32 | count</code>, ascending, for every string that shares a q-gram with word
+     */
+    private long[] sharedGrams(String word) {
+        long[] sorted = grams(word, q);
+        int distinct = distinct(sorted);
+        long[] wordGrams = new long[distinct];
+        int[] wordCounts = new int[distinct];
+        runLengths(sorted, wordGrams, wordCounts);
+
+        int postings = 0;
+        int[] ids = new int[distinct];
+        for (int k = 0; k < distinct; k++) {
+            ids[k] = Arrays.binarySearch(grams, wordGrams[k]);
+            if (ids[k] >= 0) {
+                postings += postingOffsets[ids[k] + 1] - postingOffsets[ids[k]];
+            }
+        }
+        long[] pairs = new long[postings];
+        int at = 0;
+        for (int k = 0; k < distinct; k++) {
+            int gram = ids[k];
+            if (gram < 0) {
+                continue;
+            }
+            for (int p = postingOffsets[gram]; p < postingOffsets[gram + 1]; p++) {
+                pairs[at++] = (long) postingIds[p] << 32 | Math.min(wordCounts[k], postingCounts[p]);
+            }
+        }
+        Arrays.sort(pairs);
+
+        // sum the counts of each string
+        int sums = 0;
+        for (int k = 0; k < pairs.length; k++) {
+            if (sums > 0 && pairs[k] >>> 32 == pairs[sums - 1] >>> 32) {
+                pairs[sums - 1] += (int) pairs[k];
+            } else {
+                pairs[sums++] = pairs[k];
+            }
+        }
+        return Arrays.copyOf(pairs, sums);
+    }
+
+    /**
+     * @return the shared count of string w in the pairs of {@link #sharedGrams(String)}, or 0 if it is not there
+     */
+    private static int sharedCount(long[] shared, int w) {
+        int lo = 0;
+        int hi = shared.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int id = (int) (shared[mid] >>> 32);
+            if (id < w) {
+                lo = mid + 1;
+            } else if (id > w) {
+                hi = mid - 1;
+            } else {
+                return (int) shared[mid];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The fewest q-grams that two strings of lengths la and lb must share for their ratio to be at least cutoff.
+     * <p>
+     * The matching blocks of two strings pair M characters of each in runs. A q-gram of a that lies inside one block occurs at the paired position in b; the
+     * others contain one of the <code>la - M</code> unmatched characters of a, each in at most q of them, or span the boundary between two blocks that are
+     * adjacent in a, of which there are at most <code>lb - M</code> since b has an unmatched character between them, each spanned by q - 1 of them. So at least
+     * <code>la - q + 1 - q (la - M) - (q - 1) (lb - M)</code> q-grams are shared, and the same with a and b exchanged. The bound holds for whatever blocks junk
+     * handling leaves, and is taken at the smallest M that reaches the cutoff.
+     * </p>
+     *
+     * @param la
+     *            the length of one string
+     * @param lb
+     *            the length of the other
+     * @param q
+     *            the number of characters in a q-gram
+     * @param cutoff
+     *            the ratio of interest
+     * @return the minimum number of shared q-grams, which may be zero or negative when q-grams cannot tell; or {@link Integer#MAX_VALUE} if the lengths alone
+     *         rule out the cutoff
+     */
+    static int minSharedGrams(int la, int lb, int q, double cutoff) {
+        int length = la + lb;
+        int m = minMatches(Math.min(la, lb), length, cutoff);
+        if (m < 0) {
+            return Integer.MAX_VALUE;
+        }
+        long fromA = (long) la - q + 1 - (long) q * (la - m) - (long) (q - 1) * (lb - m);
+        long fromB = (long) lb - q + 1 - (long) q * (lb - m) - (long) (q - 1) * (la - m);
+        return (int) Math.max(Math.max(fromA, fromB), Integer.MIN_VALUE);
+    }
+
+    /**
+     * @return the smallest number of matches, no more than limit, whose ratio over length reaches cutoff, computed as {@link SequenceMatcher#ratio()} computes
+     *         it; or -1 if there is none
+     */
+    static int minMatches(int limit, int length, double cutoff) {
+        if (length == 0) {
+            return 0;
+        }
+        // start just below the real-valued answer, then step up past rounding
+        int m = Math.max(0, (int) Math.floor(cutoff * length / 2.0) - 1);
+        while (m <= limit && 2.0 * m / length < cutoff) {
+            m++;
+        }
+        return m <= limit ? m : -1;
+    }
+
+    /**
+     * @return the q-grams of s, packed and sorted, with repeats
+     */
+    static long[] grams(CharSequence s, int q) {
+        int count = Math.max(0, s.length() - q + 1);
+        long[] grams = new long[count];
+        for (int i = 0; i < count; i++) {
+            long gram = 0;
+            for (int k = 0; k < q; k++) {
+                gram = gram << 16 | s.charAt(i + k);
+            }
+            grams[i] = gram;
+        }
+        Arrays.sort(grams);
+        return grams;
+    }
+
+    /**
+     * @return the number of distinct values in a sorted array
+     */
+    static int distinct(long[] sorted) {
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                distinct++;
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Run-length encode a sorted array into its distinct values and their counts.
+     */
+    static void runLengths(long[] sorted, long[] values, int[] counts) {
+        int at = -1;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                values[++at] = sorted[i];
+            }
+            counts[at]++;
+        }
+    }
+}
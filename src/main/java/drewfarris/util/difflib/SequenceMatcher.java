@@ -1,14 +1,23 @@
 package drewfarris.util.difflib;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
+import java.util.RandomAccess;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
 
 /**
  * Experimental port of Python difflib's
@@ -58,11 +67,23 @@ public class SequenceMatcher {
     /** second sequence; differences are computed as "what do we need to do to 'a' to change it into 'b'" */
     private String b;
 
-    /** <code>for x in b, b2j[x]</code> is a list of the indices (into b) at which x appears; junk and popular elements do not appear */
-    private Map<Character,List<Integer>> b2j;
+    /** reusable buffer holding the Latin-1 encoding of a in its first <code>a.length()</code> bytes; only valid when {@link #aIsLatin1} is true */
+    private byte[] aLatin1 = new byte[0];
 
-    /** the items in b for which {@link #junkFilter} is True. */
-    private Set<Character> bJunk;
+    /** true if every element of a fits in a byte */
+    private boolean aIsLatin1;
+
+    /** the Latin-1 encoding of b, or null if some element of b does not fit in a byte */
+    private byte[] bLatin1;
+
+    /** b and its index, which may be shared with other matchers; {@link #b}, {@link #bLatin1} and {@link #b2j} are copied from it */
+    private CompiledSequence compiledB;
+
+    /**
+     * <code>for x in b, b2j[x]</code> is a list of the indices (into b) at which x appears; junk and popular elements do not appear. The index also records the
+     * items in b for which {@link #junkFilter} is True.
+     */
+    private B2jIndex b2j;
 
     /** autoJunk should be set to <code>false</code> to disable the "automatic junk heuristic" that treats popular elements as junk. */
     private final boolean autoJunk;
@@ -71,18 +92,28 @@ public class SequenceMatcher {
      * a list of <code>(i, j, k)</code> triples, where <code>a[i:i+k] == b[j:j+k]</code>; ascending &amp; non-overlapping in i and in j; terminated by a dummy
      * <code>(len(a), len(b), 0)</code> sentinel
      */
-    private List<Match> matchingBlocks;
+    private PackedMatchingBlocks matchingBlocks;
+
+    /** Reusable working state for {@link #findLongestMatch(int, int, int, int)} and {@link #getMatchingBlocks()} */
+    private final BlockSearch.Scratch scratch = new BlockSearch.Scratch();
 
-    /** Reusable maps for {@link #findLongestMatch(int, int, int, int)} to avoid object creation */
-    private final Map<Integer,Integer> j2lenMap1 = new HashMap<>();
-    private final Map<Integer,Integer> j2lenMap2 = new HashMap<>();
+    /** the elements of a and b, read from their Latin-1 encodings when both have one */
+    private BlockSearch.Elements elements;
 
-    /** Constant empty list to avoid repeated allocation */
-    private static final List<Integer> EMPTY_INT_LIST = Collections.emptyList();
+    /** the algorithm used by {@link #findLongestMatch(int, int, int, int)} */
+    private LongestMatchEngine longestMatchEngine = LongestMatchEngine.DYNAMIC_PROGRAMMING;
 
-    /** Reusable queue for {@link #getMatchingBlocks()} to reduce int[] allocation */
-    private final List<int[]> reusableQueue = new ArrayList<>();
-    private final List<int[]> availableArrays = new ArrayList<>();
+    /** pool used to compute large matching block decompositions in parallel, or null to always compute them on the calling thread */
+    private ForkJoinPool forkJoinPool;
+
+    /** the smallest subrange size, in both a and b, that {@link #getMatchingBlocks()} will split into parallel tasks */
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    /** default for {@link #setParallelism(ForkJoinPool, int)} */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 4096;
+
+    /** how many chunks per processor {@link #getCloseMatches(String, List, int, double, Executor)} splits its possibilities into, to balance the load */
+    private static final int CLOSE_MATCH_CHUNKS_PER_PROCESSOR = 4;
 
     /**
      * a list of (tag, i1, i2, j1, j2) tuples, where tag is: one of
@@ -97,17 +128,11 @@ public class SequenceMatcher {
      * <dd>a[i1:i2] == b[j1:j2]</dd>
      * </dl>
      */
-    private List<Opcode> opcodes;
-
-    /**
-     * <code>for x in b</code>, <code>fullBCount[x]</code> equals the number of times x appears in b; only materialized if really needed (used only for
-     * computing {@link #quickRatio()})
-     */
-    private Map<Character,Integer> fullBCount;
+    private PackedOpcodes opcodes;
 
     /**
-     * a user-supplied function taking a sequence element and returning true iff the element is "junk". Only {@link #chainB()} uses this. Use
-     * <code>bJunk.contains(...)</code>
+     * a user-supplied function taking a sequence element and returning true iff the element is "junk". Only
+     * {@link #chainB(String, byte[], JunkFilter, boolean)} uses this. Use <code>b2j.isJunk(...)</code>
      */
     private final JunkFilter junkFilter;
 
@@ -173,6 +198,22 @@ public class SequenceMatcher {
         setSequences(a, b);
     }
 
+    /**
+     * Construct a SequenceMatcher for a precompiled second sequence, taking the junk filter and autoJunk setting it was compiled with. The index of b is
+     * shared, not copied, so this is cheap.
+     *
+     * @param a
+     *            the first of two sequences to be compared. See also {@link #setSequenceA(String)}
+     * @param b
+     *            the second of two sequences to be compared, see {@link #compile(String, JunkFilter, boolean)}
+     */
+    public SequenceMatcher(String a, CompiledSequence b) {
+        this.junkFilter = b.junkFilter;
+        this.autoJunk = b.autoJunk;
+        setSequenceA(a);
+        setSequenceB(b);
+    }
+
     /**
      * Set the two sequences to be compared
      *
@@ -186,6 +227,45 @@ public class SequenceMatcher {
         setSequenceB(b);
     }
 
+    /**
+     * Choose the algorithm used to find the longest matching block. Every engine returns the same matches; they differ only in how their running time grows
+     * with the inputs.
+     *
+     * @param longestMatchEngine
+     *            the engine to use, by default {@link LongestMatchEngine#DYNAMIC_PROGRAMMING}
+     */
+    public void setLongestMatchEngine(LongestMatchEngine longestMatchEngine) {
+        this.longestMatchEngine = Objects.requireNonNull(longestMatchEngine, "longestMatchEngine");
+    }
+
+    /**
+     * @return the algorithm used to find the longest matching block
+     */
+    public LongestMatchEngine getLongestMatchEngine() {
+        return longestMatchEngine;
+    }
+
+    /**
+     * Opt in to computing {@link #getMatchingBlocks()} in parallel.
+     * <p>
+     * Once the longest match of a range has been found, the ranges to its left and to its right are independent. When both sides of a range are at least
+     * threshold elements long, it is handled by its own {@link ForkJoinPool} task, with its own working state, so that the pieces can be searched on different
+     * cores. Smaller ranges are searched serially within the task that produced them. The blocks returned are exactly those of the serial algorithm.
+     * </p>
+     *
+     * @param forkJoinPool
+     *            the pool to run tasks in, e.g. {@link ForkJoinPool#commonPool()}, or null to compute serially on the calling thread (the default)
+     * @param threshold
+     *            the smallest length, in both a and b, of a range that is given its own task; see {@link #DEFAULT_PARALLEL_THRESHOLD}
+     */
+    public void setParallelism(ForkJoinPool forkJoinPool, int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("threshold must be > 0");
+        }
+        this.forkJoinPool = forkJoinPool;
+        this.parallelThreshold = threshold;
+    }
+
     /**
      * Set the first sequence to be compared.
      * <p>
@@ -203,7 +283,11 @@ public class SequenceMatcher {
         this.a = a;
         this.matchingBlocks = null;
         this.opcodes = null;
-        this.fullBCount = null;
+        if (aLatin1.length < a.length()) {
+            aLatin1 = new byte[a.length()];
+        }
+        this.aIsLatin1 = toLatin1(a, aLatin1);
+        updateElements();
     }
 
     /**
@@ -219,22 +303,71 @@ public class SequenceMatcher {
         if (b.equals(this.b)) {
             return;
         }
-        this.b = b;
+        setSequenceB(compile(b, junkFilter, autoJunk));
+    }
+
+    /**
+     * Set the second sequence to be compared to one that has already been compiled, sharing its index rather than building a new one.
+     * <p>
+     * The first sequence to be compared is not changed.
+     * </p>
+     *
+     * @param b
+     *            the second sequence to be compared, see {@link #compile(String, JunkFilter, boolean)}
+     * @throws IllegalArgumentException
+     *             if b was compiled with a different junk filter or autoJunk setting than this matcher's
+     */
+    public void setSequenceB(CompiledSequence b) {
+        Objects.requireNonNull(b, "b");
+        if (b.junkFilter != junkFilter || b.autoJunk != autoJunk) {
+            throw new IllegalArgumentException("b was compiled with a different junk filter or autoJunk setting");
+        }
+        if (b == compiledB) {
+            return;
+        }
+        this.compiledB = b;
+        this.b = b.b;
+        this.bLatin1 = b.latin1;
+        this.b2j = b.b2j;
         this.matchingBlocks = null;
         this.opcodes = null;
-        this.fullBCount = null;
-        this.j2lenMap1.clear();
-        this.j2lenMap2.clear();
-        this.reusableQueue.clear();
-        this.availableArrays.clear();
-        chainB();
+        updateElements();
+    }
+
+    /**
+     * Point {@link #elements} at the current sequences, once both are set.
+     */
+    private void updateElements() {
+        if (a != null && b != null) {
+            this.elements = aIsLatin1 && bLatin1 != null ? new BlockSearch.Latin1Elements(aLatin1, bLatin1) : new BlockSearch.StringElements(a, b);
+        }
+    }
+
+    /**
+     * Index a sequence once so that it can be compared against by many matchers, including on different threads; see {@link CompiledSequence}.
+     *
+     * @param b
+     *            the sequence to compile, to be used as the second sequence of a matcher
+     * @param junkFilter
+     *            the junk filter, as for {@link #SequenceMatcher(JunkFilter, String, String, boolean)}, or null
+     * @param autoJunk
+     *            set false to disable the "automatic junk heuristic" that treats popular elements as junk
+     * @return the compiled sequence
+     */
+    public static CompiledSequence compile(String b, JunkFilter junkFilter, boolean autoJunk) {
+        Objects.requireNonNull(b, "b");
+        byte[] latin1 = new byte[b.length()];
+        if (!toLatin1(b, latin1)) {
+            latin1 = null;
+        }
+        return new CompiledSequence(b, latin1, chainB(b, latin1, junkFilter, autoJunk), junkFilter, autoJunk);
     }
 
     /**
      * For each element <code>x in b</code>, set <code>b2j[x]</code> to a list of the indices in b where x appears; the indices are in increasing order;
      * <p>
-     * note that the number of times x appears in b is <code>b2j.get(x).size()</code> ... when isJunk is defined, junk elements don't show up in this map at
-     * all, which stops the central {@link #findLongestMatch(int, int, int, int)} method from starting any matching block at a junk element.
+     * note that the number of times x appears in b is <code>b2j.end(e) - b2j.start(e)</code> ... when isJunk is defined, junk elements don't show up in this
+     * map at all, which stops the central {@link #findLongestMatch(int, int, int, int)} method from starting any matching block at a junk element.
      * </p>
      * <p>
      * <code>b2j</code> also does not contain entries for "popular" elements, meaning elements that account for more than 1 + 1% of the total elements, and when
@@ -247,42 +380,37 @@ public class SequenceMatcher {
      * b2j ignoring the possibility of junk. I.e., we don't call isJunk at all yet. Throwing out the junk later is much cheaper than building b2j "right" from
      * the start.
      * </p>
+     * <p>
+     * Rather than a map of boxed lists, b2j is held in a {@link B2jIndex}: one <code>int[]</code> of positions grouped by element plus an offsets table, built
+     * in two counting passes over b. Junk and popular elements are flagged in the index instead of being removed from it.
+     * </p>
      */
 
-    private void chainB() {
-
-        this.b2j = new HashMap<>();
-        for (int i = 0; i < b.length(); i++) {
-            char elt = b.charAt(i);
-            b2j.computeIfAbsent(elt, k -> new ArrayList<>()).add(i);
-        }
-
-        this.bJunk = new HashSet<>();
-        if (junkFilter != null) {
-            for (char elt : b2j.keySet()) {
-                if (junkFilter.isJunk(elt)) {
-                    bJunk.add(elt);
-                }
-            }
-            for (char elt : bJunk) {
-                b2j.remove(elt);
-            }
+    private static B2jIndex chainB(String b, byte[] bLatin1, JunkFilter junkFilter, boolean autoJunk) {
+        if (bLatin1 != null) {
+            return B2jIndex.buildLatin1(bLatin1, bLatin1.length, junkFilter, autoJunk);
         }
+        return B2jIndex.build(b, junkFilter, autoJunk);
+    }
 
-        /* nonjunk items in b treated as junk by the heuristic (if used). */
-        Set<Character> bPopular = new HashSet<>();
-        int n = b.length();
-        if (autoJunk && n >= 200) {
-            int nTest = n / 100 + 1;
-            for (Map.Entry<Character,List<Integer>> entry : b2j.entrySet()) {
-                if (entry.getValue().size() > nTest) {
-                    bPopular.add(entry.getKey());
-                }
-            }
-            for (char elt : bPopular) {
-                b2j.remove(elt);
+    /**
+     * Encode s as Latin-1 into buffer, if possible.
+     *
+     * @param s
+     *            the sequence to encode
+     * @param buffer
+     *            receives the encoding in its first <code>s.length()</code> bytes; must be at least that long
+     * @return true if every element of s fits in a byte, false if the contents of buffer should be ignored
+     */
+    private static boolean toLatin1(String s, byte[] buffer) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= B2jIndex.LATIN1) {
+                return false;
             }
+            buffer[i] = (byte) c;
         }
+        return true;
     }
 
     /**
@@ -330,63 +458,22 @@ public class SequenceMatcher {
      * @return a Match representing the longest match
      */
     public Match findLongestMatch(int alo, int ahi, int blo, int bhi) {
+        findLongestMatch(alo, ahi, blo, bhi, scratch);
+        return new Match(scratch.besti, scratch.bestj, scratch.bestSize);
+    }
 
-        int besti = alo;
-        int bestj = blo;
-        int bestSize = 0;
-
-        // find the longest junk-free match
-        // during an iteration of the loop, j2len[j] = length of longest
-        // junk-free match ending with a[i-1] and b[j]
-
-        // Use alternating maps to avoid object creation
-        Map<Integer,Integer> j2len = j2lenMap1;
-        Map<Integer,Integer> newj2len = j2lenMap2;
-        j2len.clear();
-        newj2len.clear();
-
-        for (int i = alo; i < ahi; i++) {
-            newj2len.clear();
-            for (int j : b2j.getOrDefault(a.charAt(i), EMPTY_INT_LIST)) {
-                if (j < blo)
-                    continue;
-                if (j >= bhi)
-                    break;
-                int k = j2len.getOrDefault(j - 1, 0) + 1;
-                newj2len.put(j, k);
-                if (k > bestSize) {
-                    besti = i - k + 1;
-                    bestj = j - k + 1;
-                    bestSize = k;
-                }
-            }
-            // Swap references instead of creating new objects
-            Map<Integer,Integer> temp = j2len;
-            j2len = newj2len;
-            newj2len = temp;
-        }
-
-        while (besti > alo && bestj > blo && !bJunk.contains(b.charAt(bestj - 1)) && a.charAt(besti - 1) == b.charAt(bestj - 1)) {
-            besti--;
-            bestj--;
-            bestSize++;
-        }
-        while (besti + bestSize < ahi && bestj + bestSize < bhi && !bJunk.contains(b.charAt(bestj + bestSize))
-                        && a.charAt(besti + bestSize) == b.charAt(bestj + bestSize)) {
-            bestSize++;
-        }
-
-        while (besti > alo && bestj > blo && bJunk.contains(b.charAt(bestj - 1)) && a.charAt(besti - 1) == b.charAt(bestj - 1)) {
-            besti--;
-            bestj--;
-            bestSize++;
-        }
-        while (besti + bestSize < ahi && bestj + bestSize < bhi && bJunk.contains(b.charAt(bestj + bestSize))
-                        && a.charAt(besti + bestSize) == b.charAt(bestj + bestSize)) {
-            bestSize++;
+    /**
+     * {@link #findLongestMatch(int, int, int, int)} using the given working state, which lets several threads search the same matcher at once. The match is
+     * left in the working state rather than allocated.
+     */
+    private void findLongestMatch(int alo, int ahi, int blo, int bhi, BlockSearch.Scratch scratch) {
+        if (longestMatchEngine == LongestMatchEngine.SUFFIX_AUTOMATON) {
+            SuffixAutomaton suffixAutomaton = scratch.suffixAutomaton();
+            suffixAutomaton.longestJunkFreeMatch(a, b, b2j, alo, ahi, blo, bhi);
+            BlockSearch.extendMatch(elements, b2j, alo, ahi, blo, bhi, suffixAutomaton.besti, suffixAutomaton.bestj, suffixAutomaton.bestSize, scratch);
+            return;
         }
-
-        return new Match(besti, bestj, bestSize);
+        BlockSearch.findLongestMatch(elements, b2j, alo, ahi, blo, bhi, scratch);
     }
 
     /**
@@ -403,82 +490,95 @@ public class SequenceMatcher {
      * <p>
      * The last triple is a dummy, <code>(len(a), len(b), 0)</code>, and is the only triple with <code>n==0</code>.
      * </p>
+     * <p>
+     * The list is a read-only view of {@link #getPackedMatchingBlocks()}, which is cached until a sequence changes. It cannot be modified, and each
+     * {@link List#get(int)} creates a new {@link Match}, so a caller that reads the blocks many times should walk the packed blocks, or copy the list once.
+     * </p>
      *
      * @return a list of matching blocks
+     * @see #getPackedMatchingBlocks()
      */
     public List<Match> getMatchingBlocks() {
+        return getPackedMatchingBlocks().asList();
+    }
+
+    /**
+     * {@link #getMatchingBlocks()} as parallel <code>int[]</code>s, for callers that want to walk the blocks without a {@link Match} per block.
+     *
+     * @return the matching blocks
+     */
+    public PackedMatchingBlocks getPackedMatchingBlocks() {
         if (matchingBlocks != null) {
             return matchingBlocks;
         }
-        int la = a.length();
-        int lb = b.length();
+        PackedMatchingBlocks.Builder builder = new PackedMatchingBlocks.Builder(16);
+        if (forkJoinPool != null && isParallelRange(0, a.length(), 0, b.length())) {
+            parallelMatchingBlocks(builder::add);
+        } else {
+            streamMatchingBlocks(builder::add);
+        }
+        this.matchingBlocks = builder.build();
+        return matchingBlocks;
+    }
 
-        // This is most naturally expressed as a recursive algorithm, but
-        // at least one user bumped into extreme use cases that exceeded
-        // the recursion limit on their box. So, now we maintain a list
-        // ('queue') of blocks we still need to look at, and append partial
-        // results to `matching_blocks` in a loop; the matches are sorted
-        // at the end.
-
-        // Reuse queue and arrays to minimize object allocation
-        reusableQueue.clear();
-        reusableQueue.add(getOrCreateArray(0, la, 0, lb));
-        final List<Match> matchingBlocks = new ArrayList<>();
-
-        while (!reusableQueue.isEmpty()) {
-            int[] x = reusableQueue.remove(reusableQueue.size() - 1);
-            int alo = x[0];
-            int ahi = x[1];
-            int blo = x[2];
-            int bhi = x[3];
-            Match match = findLongestMatch(alo, ahi, blo, bhi);
-            int i = match.aOffset;
-            int j = match.bOffset;
-            int k = match.size;
-            if (k > 0) {
-                matchingBlocks.add(match);
-                if (alo < i && blo < j) {
-                    reusableQueue.add(getOrCreateArray(alo, i, blo, j));
-                }
-                if (i + k < ahi && j + k < bhi) {
-                    reusableQueue.add(getOrCreateArray(i + k, ahi, j + k, bhi));
-                }
+    /**
+     * Pass the matching blocks to a visitor, in the order and with the sentinel described by {@link #getMatchingBlocks()}.
+     * <p>
+     * If the blocks have already been computed by {@link #getPackedMatchingBlocks()} or a method that calls it, they are replayed. Otherwise they are computed
+     * for this call only and nothing is cached; call {@link #getPackedMatchingBlocks()} instead to keep the blocks for later. Searched on the calling thread,
+     * each block is passed on as soon as it and every block before it are known, without collecting or sorting them first, so a large diff can be consumed
+     * while it is still being computed. When the sequences are large enough to be searched in parallel, see {@link #setParallelism(ForkJoinPool, int)}, the
+     * tasks find the blocks of their ranges first, and the blocks are passed on, merged and in order, once every task has finished.
+     * </p>
+     * <p>
+     * The visitor must not call back into this matcher.
+     * </p>
+     *
+     * @param visitor
+     *            receives each matching block in turn
+     */
+    public void visitMatchingBlocks(MatchVisitor visitor) {
+        Objects.requireNonNull(visitor, "visitor");
+        if (matchingBlocks != null) {
+            for (int index = 0; index < matchingBlocks.count(); index++) {
+                visitor.visitMatch(matchingBlocks.aOffset(index), matchingBlocks.bOffset(index), matchingBlocks.size(index));
             }
-            // Return array to pool for reuse
-            recycleArray(x);
+        } else if (forkJoinPool != null && isParallelRange(0, a.length(), 0, b.length())) {
+            parallelMatchingBlocks(visitor);
+        } else {
+            streamMatchingBlocks(visitor);
         }
+    }
 
-        // It's possible that we have adjacent equal blocks in the
-        // matching_blocks list now. Starting with 2.5, this code was added
-        // to collapse them.
-        matchingBlocks.sort(Comparator.comparingInt((Match m) -> m.aOffset).thenComparingInt(m -> m.bOffset));
-        this.matchingBlocks = getNonAdjacentMatches(matchingBlocks, la, lb);
-        return this.matchingBlocks;
+    /**
+     * Search all of a and b on the calling thread, passing the merged blocks and the sentinel to visitor.
+     */
+    private void streamMatchingBlocks(MatchVisitor visitor) {
+        int la = a.length();
+        int lb = b.length();
+        // It's possible that the search finds adjacent equal blocks. Starting
+        // with 2.5, these are collapsed, here as they are found.
+        AdjacentMatchMerger merger = new AdjacentMatchMerger(visitor);
+        BlockSearch.collectMatchingBlocks(this::findLongestMatch, 0, la, 0, lb, scratch, merger);
+        merger.finish(la, lb);
     }
 
-    private static List<Match> getNonAdjacentMatches(List<Match> matchingBlocks, int la, int lb) {
-        final List<Match> nonAdjacent = new ArrayList<>();
-        int i1 = 0, j1 = 0, k1 = 0;
-        for (Match match : matchingBlocks) {
-            int i2 = match.aOffset;
-            int j2 = match.bOffset;
-            int k2 = match.size;
-            if (i1 + k1 == i2 && j1 + k1 == j2) {
-                k1 += k2;
-            } else {
-                if (k1 > 0) {
-                    nonAdjacent.add(new Match(i1, j1, k1));
-                }
-                i1 = i2;
-                j1 = j2;
-                k1 = k2;
-            }
-        }
-        if (k1 > 0) {
-            nonAdjacent.add(new Match(i1, j1, k1));
-        }
-        nonAdjacent.add(new Match(la, lb, 0));
-        return nonAdjacent;
+    /**
+     * Search all of a and b in tasks on {@link #forkJoinPool}, then pass the merged blocks and the sentinel to visitor.
+     */
+    private void parallelMatchingBlocks(MatchVisitor visitor) {
+        int la = a.length();
+        int lb = b.length();
+        AdjacentMatchMerger merger = new AdjacentMatchMerger(visitor);
+        forkJoinPool.invoke(new MatchingBlocksTask(this, 0, la, 0, lb)).visitAll(merger);
+        merger.finish(la, lb);
+    }
+
+    /**
+     * @return true if a range is big enough, in both a and b, to be split into its own parallel task
+     */
+    private boolean isParallelRange(int alo, int ahi, int blo, int bhi) {
+        return ahi - alo >= parallelThreshold && bhi - blo >= parallelThreshold;
     }
 
     /**
@@ -500,41 +600,62 @@ public class SequenceMatcher {
      * <dt>equal</dt>
      * <dd><code>a[i1:i2] == b[j1:j2]</code></dd>
      * </dl>
+     * <p>
+     * The list is a read-only view of {@link #getPackedOpcodes()}, which is cached until a sequence changes. It cannot be modified, and each
+     * {@link List#get(int)} creates a new {@link Opcode}, so a caller that reads the opcodes many times should walk the packed opcodes, or copy the list once.
+     * </p>
      *
      * @return a list of opcodes
+     * @see #getPackedOpcodes()
      */
     public List<Opcode> getOpcodes() {
-        if (opcodes != null) {
-            return opcodes;
-        }
-        int i = 0;
-        int j = 0;
-        List<Opcode> opcodes = new ArrayList<>();
-        for (Match match : getMatchingBlocks()) {
-            int ai = match.aOffset;
-            int bj = match.bOffset;
-            int size = match.size;
-            OpcodeTag tag = OpcodeTag.EMPTY;
-            if (i < ai && j < bj) {
-                tag = OpcodeTag.REPLACE;
-            } else if (i < ai) {
-                tag = OpcodeTag.DELETE;
-            } else if (j < bj) {
-                tag = OpcodeTag.INSERT;
-            }
-            if (!tag.equals(OpcodeTag.EMPTY)) {
-                opcodes.add(new Opcode(tag, i, ai, j, bj));
-            }
-            i = ai + size;
-            j = bj + size;
-            if (size > 0) {
-                opcodes.add(new Opcode(OpcodeTag.EQUAL, ai, i, bj, j));
+        return getPackedOpcodes().asList();
+    }
+
+    /**
+     * {@link #getOpcodes()} as parallel primitive arrays, for callers that want to walk the opcodes without an {@link Opcode} per edit.
+     *
+     * @return the opcodes
+     */
+    public PackedOpcodes getPackedOpcodes() {
+        if (opcodes == null) {
+            PackedMatchingBlocks blocks = getPackedMatchingBlocks();
+            // at most a non-equal and an equal opcode per block
+            PackedOpcodes.Builder builder = new PackedOpcodes.Builder(blocks.count() * 2);
+            OpcodeEmitter emitter = new OpcodeEmitter(builder::add);
+            for (int index = 0; index < blocks.count(); index++) {
+                emitter.visitMatch(blocks.aOffset(index), blocks.bOffset(index), blocks.size(index));
             }
+            this.opcodes = builder.build();
         }
-        this.opcodes = opcodes;
         return opcodes;
     }
 
+    /**
+     * Pass the opcodes to a handler, in the order described by {@link #getOpcodes()}.
+     * <p>
+     * The opcodes are generated from the matching blocks as they are found, see {@link #visitMatchingBlocks(MatchVisitor)}, with no {@link Opcode} or list
+     * created and nothing cached, which suits rendering a diff once. Opcodes or blocks computed by an earlier call to {@link #getOpcodes()} or
+     * {@link #getMatchingBlocks()} are reused.
+     * </p>
+     * <p>
+     * The handler must not call back into this matcher.
+     * </p>
+     *
+     * @param handler
+     *            receives each opcode in turn
+     */
+    public void visitOpcodes(OpcodeHandler handler) {
+        Objects.requireNonNull(handler, "handler");
+        if (opcodes != null) {
+            for (int index = 0; index < opcodes.count(); index++) {
+                handler.handleOpcode(opcodes.tag(index), opcodes.i1(index), opcodes.i2(index), opcodes.j1(index), opcodes.j2(index));
+            }
+            return;
+        }
+        visitMatchingBlocks(new OpcodeEmitter(handler));
+    }
+
     /**
      * Return a measure of the sequences' similarity (float in <code>[0,1]</code>).
      * <p>
@@ -549,8 +670,86 @@ public class SequenceMatcher {
      * @return a measure of the sequences' similarity, a float in <code>[0,1]</code>
      */
     public double ratio() {
-        int matches = getMatchingBlocks().stream().mapToInt(m -> m.size).sum();
-        return calculateRatio(matches, a.length() + b.length());
+        int matches = getPackedMatchingBlocks().totalSize();
+        return BlockSearch.ratio(matches, a.length() + b.length());
+    }
+
+    /**
+     * Return {@link #ratio()} if it is at least cutoff, without computing it in full when it is not.
+     * <p>
+     * The matching blocks are searched as for {@link #getMatchingBlocks()}, while keeping an upper bound on the final number of matches: the matches found so
+     * far plus, for every range still to be searched, the length of its shorter side. The search stops as soon as that bound puts the ratio below cutoff. The
+     * blocks are not kept, so this is for callers, like {@link #getCloseMatches(String, List, int, double)}, that only need the score.
+     * </p>
+     *
+     * @param cutoff
+     *            the smallest ratio of interest
+     * @return the exact ratio if it is at least cutoff, otherwise -1
+     */
+    public double ratioIfAbove(double cutoff) {
+        int length = a.length() + b.length();
+        int matches = matchingBlocks != null ? matchingBlocks.totalSize() : boundedMatches(cutoff);
+        if (matches < 0) {
+            return -1;
+        }
+        double ratio = BlockSearch.ratio(matches, length);
+        return ratio >= cutoff ? ratio : -1;
+    }
+
+    /**
+     * @param cutoff
+     *            the smallest ratio of interest
+     * @return true if {@link #ratio()} is at least cutoff; see {@link #ratioIfAbove(double)}
+     */
+    public boolean ratioAtLeast(double cutoff) {
+        return ratioIfAbove(cutoff) >= 0;
+    }
+
+    /**
+     * Count the elements in matching blocks, giving up once the ratio cannot reach cutoff.
+     *
+     * @return the number of matches, or -1 if the ratio is below cutoff
+     */
+    private int boundedMatches(double cutoff) {
+        int la = a.length();
+        int lb = b.length();
+        int length = la + lb;
+        int matched = 0;
+        // the most that the ranges still on the stack can add to matched
+        int pending = Math.min(la, lb);
+        if (BlockSearch.ratio(pending, length) < cutoff) {
+            return -1;
+        }
+
+        // the order the ranges are searched in doesn't change the total, so this is the plain work stack of BlockSearch.collectMatchingBlocks
+        int top = scratch.push(0, 0, la, 0, lb);
+        while (top > 0) {
+            top -= 4;
+            int alo = scratch.stack[top];
+            int ahi = scratch.stack[top + 1];
+            int blo = scratch.stack[top + 2];
+            int bhi = scratch.stack[top + 3];
+            pending -= Math.min(ahi - alo, bhi - blo);
+            findLongestMatch(alo, ahi, blo, bhi, scratch);
+            int i = scratch.besti;
+            int j = scratch.bestj;
+            int k = scratch.bestSize;
+            if (k > 0) {
+                matched += k;
+                if (alo < i && blo < j) {
+                    pending += Math.min(i - alo, j - blo);
+                    top = scratch.push(top, alo, i, blo, j);
+                }
+                if (i + k < ahi && j + k < bhi) {
+                    pending += Math.min(ahi - i - k, bhi - j - k);
+                    top = scratch.push(top, i + k, ahi, j + k, bhi);
+                }
+            }
+            if (BlockSearch.ratio(matched + pending, length) < cutoff) {
+                return -1;
+            }
+        }
+        return matched;
     }
 
     /**
@@ -562,26 +761,8 @@ public class SequenceMatcher {
      * @return an upper bound on measure of the sequences' similarity, a float in <code>[0,1]</code>
      */
     public double quickRatio() {
-        if (fullBCount == null) {
-            fullBCount = new HashMap<>();
-            // Use charAt() instead of toCharArray() to avoid array creation
-            for (int i = 0; i < b.length(); i++) {
-                char elt = b.charAt(i);
-                fullBCount.put(elt, fullBCount.getOrDefault(elt, 0) + 1);
-            }
-        }
-        Map<Character,Integer> avail = new HashMap<>();
-        int matches = 0;
-        // Use charAt() instead of toCharArray() to avoid array creation
-        for (int i = 0; i < a.length(); i++) {
-            char elt = a.charAt(i);
-            int numb = avail.getOrDefault(elt, fullBCount.getOrDefault(elt, 0));
-            avail.put(elt, numb - 1);
-            if (numb > 0) {
-                matches++;
-            }
-        }
-        return calculateRatio(matches, a.length() + b.length());
+        int matches = BlockSearch.quickRatioMatches(elements, a.length(), b2j, scratch);
+        return BlockSearch.ratio(matches, a.length() + b.length());
     }
 
     /**
@@ -595,7 +776,7 @@ public class SequenceMatcher {
     public double realQuickRatio() {
         int la = a.length();
         int lb = b.length();
-        return calculateRatio(Math.min(la, lb), la + lb);
+        return BlockSearch.ratio(Math.min(la, lb), la + lb);
     }
 
     /**
@@ -604,57 +785,103 @@ public class SequenceMatcher {
      * @return the set of characters in b that are considered junk
      */
     public Set<Character> getBJunk() {
-        return new HashSet<>(bJunk);
+        return b2j.junk();
     }
 
-    private double calculateRatio(int matches, int length) {
-        if (length == 0) {
-            return 1.0;
-        }
-        return 2.0 * matches / length;
+    /**
+     * Use SequenceMatcher to return list of the best "good enough" matches.
+     *
+     * @param word
+     *            is a sequence for which close matches are desired (typically a string).
+     * @param possibilities
+     *            is a list of sequences against which to match word (typically a list of strings).
+     * @param n
+     *            (default 3) is the maximum number of close matches to return. n must be &gt; 0.
+     * @param cutoff
+     *            (default 0.6) is a float in <code>[0, 1]</code>. Possibilities that don't score at least that similar to word are ignored.
+     *
+     * @return The best (no more than n) matches among the possibilities are returned in a list, sorted by similarity score, most similar first.
+     */
+    public static List<String> getCloseMatches(String word, List<String> possibilities, int n, double cutoff) {
+        checkCloseMatchArguments(n, cutoff);
+        TopMatches result = new TopMatches(n, cutoff);
+        scanCloseMatches(compile(word, null, true), possibilities.iterator(), 0, result);
+        return result.words();
     }
 
     /**
-     * Get a reusable int array from the pool or create a new one.
+     * {@link #getCloseMatches(String, List, int, double)} over possibilities that are read one at a time, for candidate lists too large to hold in memory. Only
+     * the best n seen so far are kept, so memory does not grow with the number of possibilities.
      *
-     * @param alo
-     *            start of a sequence
-     * @param ahi
-     *            end of a sequence
-     * @param blo
-     *            start of b sequence
-     * @param bhi
-     *            end of b sequence
-     * @return an array containing these offsets.
+     * @param word
+     *            is a sequence for which close matches are desired (typically a string).
+     * @param possibilities
+     *            the sequences against which to match word, consumed by this call
+     * @param n
+     *            (default 3) is the maximum number of close matches to return. n must be &gt; 0.
+     * @param cutoff
+     *            (default 0.6) is a float in <code>[0, 1]</code>. Possibilities that don't score at least that similar to word are ignored.
+     *
+     * @return The best (no more than n) matches among the possibilities are returned in a list, sorted by similarity score, most similar first.
      */
-    private int[] getOrCreateArray(int alo, int ahi, int blo, int bhi) {
-        int[] array;
-        if (!availableArrays.isEmpty()) {
-            array = availableArrays.remove(availableArrays.size() - 1);
-        } else {
-            array = new int[4];
-        }
-        array[0] = alo;
-        array[1] = ahi;
-        array[2] = blo;
-        array[3] = bhi;
-        return array;
+    public static List<String> getCloseMatches(String word, Iterator<? extends CharSequence> possibilities, int n, double cutoff) {
+        checkCloseMatchArguments(n, cutoff);
+        TopMatches result = new TopMatches(n, cutoff);
+        scanCloseMatches(compile(word, null, true), possibilities, 0, result);
+        return result.words();
     }
 
     /**
-     * Return an int array to the pool for reuse.
+     * {@link #getCloseMatches(String, Iterator, int, double)} over a stream, which is consumed but not closed.
      *
-     * @param array
-     *            the array to return to the pool.
+     * @param word
+     *            is a sequence for which close matches are desired (typically a string).
+     * @param possibilities
+     *            the sequences against which to match word, in encounter order
+     * @param n
+     *            (default 3) is the maximum number of close matches to return. n must be &gt; 0.
+     * @param cutoff
+     *            (default 0.6) is a float in <code>[0, 1]</code>. Possibilities that don't score at least that similar to word are ignored.
+     *
+     * @return The best (no more than n) matches among the possibilities are returned in a list, sorted by similarity score, most similar first.
+     */
+    public static List<String> getCloseMatches(String word, Stream<? extends CharSequence> possibilities, int n, double cutoff) {
+        return getCloseMatches(word, possibilities.iterator(), n, cutoff);
+    }
+
+    /**
+     * {@link #getCloseMatches(String, Iterator, int, double)} over the lines of a text file, which are read through a buffer one at a time, so a file of any
+     * size is searched in constant memory. Lines are split as by {@link java.io.BufferedReader#readLine()}.
+     *
+     * @param word
+     *            is a sequence for which close matches are desired (typically a string).
+     * @param possibilities
+     *            a file with one possibility per line
+     * @param charset
+     *            the encoding of the file
+     * @param n
+     *            (default 3) is the maximum number of close matches to return. n must be &gt; 0.
+     * @param cutoff
+     *            (default 0.6) is a float in <code>[0, 1]</code>. Possibilities that don't score at least that similar to word are ignored.
+     *
+     * @return The best (no more than n) matches among the lines are returned in a list, sorted by similarity score, most similar first.
+     * @throws IOException
+     *             if the file cannot be opened or read, or is not valid in charset
      */
-    private void recycleArray(int[] array) {
-        if (availableArrays.size() < 10) { // Limit pool size to avoid memory leaks
-            availableArrays.add(array);
+    public static List<String> getCloseMatches(String word, Path possibilities, Charset charset, int n, double cutoff) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(possibilities, charset)) {
+            return getCloseMatches(word, reader.lines().iterator(), n, cutoff);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
     }
 
     /**
-     * Use SequenceMatcher to return list of the best "good enough" matches.
+     * {@link #getCloseMatches(String, List, int, double)} with the possibilities split into chunks that are scored concurrently.
+     * <p>
+     * word is compiled once and its index is shared by a matcher per chunk. Each chunk keeps its own best n, and these are merged by score and then by position
+     * in possibilities, so the result is exactly that of the serial method, whatever the executor and however the chunks are scheduled.
+     * </p>
      *
      * @param word
      *            is a sequence for which close matches are desired (typically a string).
@@ -664,30 +891,270 @@ public class SequenceMatcher {
      *            (default 3) is the maximum number of close matches to return. n must be &gt; 0.
      * @param cutoff
      *            (default 0.6) is a float in <code>[0, 1]</code>. Possibilities that don't score at least that similar to word are ignored.
+     * @param executor
+     *            runs the chunks, e.g. a {@link ForkJoinPool}; the calling thread waits for them
      *
      * @return The best (no more than n) matches among the possibilities are returned in a list, sorted by similarity score, most similar first.
      */
-    public static List<String> getCloseMatches(String word, List<String> possibilities, int n, double cutoff) {
+    public static List<String> getCloseMatches(String word, List<String> possibilities, int n, double cutoff, Executor executor) {
+        checkCloseMatchArguments(n, cutoff);
+        Objects.requireNonNull(executor, "executor");
+        CompiledSequence compiled = compile(word, null, true);
+        List<String> candidates = possibilities instanceof RandomAccess ? possibilities : new ArrayList<>(possibilities);
+
+        int size = candidates.size();
+        int chunks = Math.min(size, CLOSE_MATCH_CHUNKS_PER_PROCESSOR * Runtime.getRuntime().availableProcessors());
+        List<CompletableFuture<TopMatches>> futures = new ArrayList<>(chunks);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int from = (int) ((long) size * chunk / chunks);
+            int to = (int) ((long) size * (chunk + 1) / chunks);
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                TopMatches top = new TopMatches(n, cutoff);
+                scanCloseMatches(compiled, candidates.subList(from, to).iterator(), from, top);
+                return top;
+            }, executor));
+        }
+
+        TopMatches result = new TopMatches(n, cutoff);
+        for (CompletableFuture<TopMatches> future : futures) {
+            try {
+                result.addAll(future.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return result.words();
+    }
+
+    /**
+     * Check the arguments shared by every getCloseMatches, here and in the close-match indexes.
+     *
+     * @throws IllegalArgumentException
+     *             if n is not positive or cutoff is not in <code>[0, 1]</code>
+     */
+    static void checkCloseMatchArguments(int n, double cutoff) {
         if (n <= 0) {
             throw new IllegalArgumentException("n must be > 0");
         }
         if (cutoff < 0.0 || cutoff > 1.0) {
             throw new IllegalArgumentException("cutoff must be in [0.0, 1.0]");
         }
-        List<MatchResult> result = new ArrayList<>();
-        SequenceMatcher s = new SequenceMatcher(null, "", word, true);
-        for (String x : possibilities) {
+    }
+
+    /**
+     * Score possibilities against word, offering those that pass the cutoff to result.
+     *
+     * @param word
+     *            the compiled word
+     * @param possibilities
+     *            the possibilities to score
+     * @param firstIndex
+     *            the position of the first possibility in the caller's input, to break ties between equal scores
+     * @param result
+     *            receives the possibilities
+     */
+    private static void scanCloseMatches(CompiledSequence word, Iterator<? extends CharSequence> possibilities, long firstIndex, TopMatches result) {
+        // Keep only the best n in a bounded heap. Once it is full, a possibility has to beat the worst of them, so the cheap upper bounds prune more and
+        // more possibilities as better ones are found, and ratio() is computed once, only for possibilities that survive them, and abandoned as soon as it
+        // cannot reach the worst of the n.
+        SequenceMatcher s = new SequenceMatcher("", word);
+        long index = firstIndex;
+        while (possibilities.hasNext()) {
+            String x = possibilities.next().toString();
             s.setSequenceA(x);
-            if (s.realQuickRatio() >= cutoff && s.quickRatio() >= cutoff && s.ratio() >= cutoff) {
-                result.add(new MatchResult(s.ratio(), x));
+            if (result.admits(s.realQuickRatio()) && result.admits(s.quickRatio())) {
+                double ratio = s.ratioIfAbove(result.threshold());
+                if (ratio >= 0) {
+                    result.offer(ratio, index, x);
+                }
+            }
+            index++;
+        }
+    }
+
+    /** Algorithms for finding the longest matching block, see {@link #setLongestMatchEngine(LongestMatchEngine)} */
+    public enum LongestMatchEngine {
+        /**
+         * difflib's own algorithm: for each element of a, extend the matches ending at the previous element using the positions of the element in b. Fast for
+         * typical inputs, but its cost grows with the number of times each element occurs in b, so it can go quadratic on large, repetitive inputs.
+         */
+        DYNAMIC_PROGRAMMING,
+        /**
+         * Build a suffix automaton over the part of b being searched and stream a through it. Each search is linear in the lengths of the two ranges, which
+         * pays off on large, repetitive inputs, particularly with autoJunk off.
+         */
+        SUFFIX_AUTOMATON
+    }
+
+    /**
+     * Computes the matching blocks of one range for {@link #getMatchingBlocks()} in parallel mode. The longest match of the range is found first; the ranges to
+     * either side of it then become tasks of their own if they are large enough, and are otherwise searched serially. The blocks are returned in ascending
+     * order, left range, match, right range, so no sort is needed to combine them.
+     */
+    private static final class MatchingBlocksTask extends RecursiveTask<PackedMatchingBlocks.Builder> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient SequenceMatcher matcher;
+        private final int alo;
+        private final int ahi;
+        private final int blo;
+        private final int bhi;
+
+        MatchingBlocksTask(SequenceMatcher matcher, int alo, int ahi, int blo, int bhi) {
+            this.matcher = matcher;
+            this.alo = alo;
+            this.ahi = ahi;
+            this.blo = blo;
+            this.bhi = bhi;
+        }
+
+        @Override
+        protected PackedMatchingBlocks.Builder compute() {
+            BlockSearch.Scratch scratch = new BlockSearch.Scratch();
+            PackedMatchingBlocks.Builder matchingBlocks = new PackedMatchingBlocks.Builder(16);
+            if (!matcher.isParallelRange(alo, ahi, blo, bhi)) {
+                BlockSearch.collectMatchingBlocks(matcher::findLongestMatch, alo, ahi, blo, bhi, scratch, matchingBlocks::add);
+                return matchingBlocks;
+            }
+
+            matcher.findLongestMatch(alo, ahi, blo, bhi, scratch);
+            int i = scratch.besti;
+            int j = scratch.bestj;
+            int k = scratch.bestSize;
+            if (k == 0) {
+                return matchingBlocks;
+            }
+            MatchingBlocksTask left = null;
+            if (alo < i && blo < j) {
+                left = new MatchingBlocksTask(matcher, alo, i, blo, j);
+                left.fork();
+            }
+            PackedMatchingBlocks.Builder right = null;
+            if (i + k < ahi && j + k < bhi) {
+                // the right range is computed on this thread with fresh working state, leaving the scratch above to be collected
+                right = new MatchingBlocksTask(matcher, i + k, ahi, j + k, bhi).compute();
+            }
+            if (left != null) {
+                matchingBlocks.addAll(left.join());
+            }
+            matchingBlocks.add(i, j, k);
+            if (right != null) {
+                matchingBlocks.addAll(right);
+            }
+            return matchingBlocks;
+        }
+    }
+
+    /**
+     * Collapses adjacent equal blocks on their way to another visitor, and adds the sentinel. Blocks must be visited in ascending order.
+     */
+    static final class AdjacentMatchMerger implements MatchVisitor {
+        private final MatchVisitor visitor;
+        private int i1;
+        private int j1;
+        private int k1;
+
+        AdjacentMatchMerger(MatchVisitor visitor) {
+            this.visitor = visitor;
+        }
+
+        @Override
+        public void visitMatch(int i2, int j2, int k2) {
+            if (i1 + k1 == i2 && j1 + k1 == j2) {
+                k1 += k2;
+            } else {
+                if (k1 > 0) {
+                    visitor.visitMatch(i1, j1, k1);
+                }
+                i1 = i2;
+                j1 = j2;
+                k1 = k2;
             }
         }
-        result.sort((a, b) -> Double.compare(b.score, a.score));
-        List<String> matches = new ArrayList<>();
-        for (int i = 0; i < Math.min(n, result.size()); i++) {
-            matches.add(result.get(i).word);
+
+        /**
+         * Pass on the last block and the sentinel.
+         */
+        void finish(int la, int lb) {
+            if (k1 > 0) {
+                visitor.visitMatch(i1, j1, k1);
+            }
+            visitor.visitMatch(la, lb, 0);
         }
-        return matches;
+    }
+
+    /**
+     * Turns the matching blocks, visited in order, into opcodes for a handler.
+     */
+    static final class OpcodeEmitter implements MatchVisitor {
+        private final OpcodeHandler handler;
+        private int i;
+        private int j;
+
+        OpcodeEmitter(OpcodeHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void visitMatch(int ai, int bj, int size) {
+            OpcodeTag tag = OpcodeTag.EMPTY;
+            if (i < ai && j < bj) {
+                tag = OpcodeTag.REPLACE;
+            } else if (i < ai) {
+                tag = OpcodeTag.DELETE;
+            } else if (j < bj) {
+                tag = OpcodeTag.INSERT;
+            }
+            if (!tag.equals(OpcodeTag.EMPTY)) {
+                handler.handleOpcode(tag, i, ai, j, bj);
+            }
+            i = ai + size;
+            j = bj + size;
+            if (size > 0) {
+                handler.handleOpcode(OpcodeTag.EQUAL, ai, i, bj, j);
+            }
+        }
+    }
+
+    /** Callback for {@link SequenceMatcher#visitMatchingBlocks(MatchVisitor)} */
+    public interface MatchVisitor {
+        /**
+         * Receive the matching block <code>a[aOffset:aOffset+size] == b[bOffset:bOffset+size]</code>.
+         *
+         * @param aOffset
+         *            the start of the block in a
+         * @param bOffset
+         *            the start of the block in b
+         * @param size
+         *            the number of elements in the block, 0 for the final sentinel
+         */
+        void visitMatch(int aOffset, int bOffset, int size);
+    }
+
+    /** Callback for {@link SequenceMatcher#visitOpcodes(OpcodeHandler)} */
+    public interface OpcodeHandler {
+        /**
+         * Receive one opcode, see {@link SequenceMatcher#getOpcodes()}.
+         *
+         * @param tag
+         *            the type of edit, never {@link OpcodeTag#EMPTY}
+         * @param i1
+         *            the start of the range in a
+         * @param i2
+         *            the end of the range in a
+         * @param j1
+         *            the start of the range in b
+         * @param j2
+         *            the end of the range in b
+         */
+        void handleOpcode(OpcodeTag tag, int i1, int i2, int j1, int j2);
     }
 
     /** Interface for junk filter operations */
@@ -0,0 +1,323 @@
+package drewfarris.util.difflib;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * {@link SequenceMatcher#ratio()} between every row string, as sequence a, and every column string, as sequence b.
+ * <p>
+ * Nesting loops around {@link SequenceMatcher#setSequences(String, String)} indexes the column string again for every pair. Here every column is compiled once,
+ * see {@link SequenceMatcher#compile(String, SequenceMatcher.JunkFilter, boolean)}, and the matrix is computed in bands of {@link #BAND_ROWS} rows, each band a
+ * {@link ForkJoinPool} task with its own matcher. Within a band the columns are taken in blocks of {@link #BLOCK_COLUMNS}, so that the indexes of a block of
+ * columns are reused by every row of the band while they are still in cache.
+ * </p>
+ * <p>
+ * Results come either as a dense row-major matrix, in a <code>float[]</code> or in a {@link FloatBuffer}, which may be direct to keep a large matrix off the
+ * heap, or as the sparse list of the pairs that reach a cutoff, which lets most pairs be rejected by {@link SequenceMatcher#realQuickRatio()},
+ * {@link SequenceMatcher#quickRatio()} and {@link SequenceMatcher#ratioIfAbove(double)} without computing their ratio in full. A dense matrix is addressed with
+ * <code>int</code> indexes, as arrays and buffers are, so it holds at most {@link #MAX_DENSE_CELLS} cells; larger matrices are rejected, and must be computed
+ * sparse or in several calls over ranges of the rows.
+ * </p>
+ */
+public final class SimilarityMatrix {
+
+    /** rows per task */
+    static final int BAND_ROWS = 32;
+
+    /** columns compared with every row of a band before moving on to the next columns */
+    static final int BLOCK_COLUMNS = 256;
+
+    /** the most cells a dense matrix may have: the largest index of a {@link FloatBuffer}, plus one */
+    public static final int MAX_DENSE_CELLS = Integer.MAX_VALUE;
+
+    private SimilarityMatrix() {}
+
+    /**
+     * Compute the pairs whose ratio is at least cutoff.
+     *
+     * @param rows
+     *            the strings compared as sequence a
+     * @param cols
+     *            the strings compared as sequence b
+     * @param junkFilter
+     *            the junk filter for the column strings, or null
+     * @param autoJunk
+     *            set false to disable the "automatic junk heuristic" that treats popular elements as junk
+     * @param cutoff
+     *            the smallest ratio of a pair that is kept, in <code>[0, 1]</code>
+     * @param pool
+     *            the pool to compute bands in, or null to compute on the calling thread
+     * @return the pairs, ordered by row and then by column
+     */
+    public static Sparse compute(List<String> rows, List<String> cols, SequenceMatcher.JunkFilter junkFilter, boolean autoJunk, double cutoff,
+                    ForkJoinPool pool) {
+        if (cutoff < 0.0 || cutoff > 1.0) {
+            throw new IllegalArgumentException("cutoff must be in [0.0, 1.0]");
+        }
+        Job job = new Job(rows, cols, junkFilter, autoJunk, cutoff, null);
+        return run(job, pool);
+    }
+
+    /**
+     * Compute every ratio into a new row-major array, in which the ratio of <code>rows.get(r)</code> and <code>cols.get(c)</code> is at
+     * <code>r * cols.size() + c</code>.
+     *
+     * @param rows
+     *            the strings compared as sequence a
+     * @param cols
+     *            the strings compared as sequence b
+     * @param junkFilter
+     *            the junk filter for the column strings, or null
+     * @param autoJunk
+     *            set false to disable the "automatic junk heuristic" that treats popular elements as junk
+     * @param pool
+     *            the pool to compute bands in, or null to compute on the calling thread
+     * @return the matrix
+     * @throws IllegalArgumentException
+     *             if the matrix has more cells than the largest array a JVM will allocate, which is a few less than {@link #MAX_DENSE_CELLS}
+     */
+    public static float[] computeDense(List<String> rows, List<String> cols, SequenceMatcher.JunkFilter junkFilter, boolean autoJunk, ForkJoinPool pool) {
+        long cells = denseCells(rows, cols);
+        if (cells > MAX_DENSE_CELLS - 8) {
+            throw new IllegalArgumentException("matrix of " + cells + " cells is too large for an array");
+        }
+        float[] matrix = new float[(int) cells];
+        computeDense(rows, cols, junkFilter, autoJunk, FloatBuffer.wrap(matrix), pool);
+        return matrix;
+    }
+
+    /**
+     * Compute every ratio into a buffer, in the layout of {@link #computeDense(List, List, SequenceMatcher.JunkFilter, boolean, ForkJoinPool)} relative to the
+     * buffer's position. A direct buffer keeps a large matrix off the heap. The buffer's position and limit are not changed.
+     *
+     * @param rows
+     *            the strings compared as sequence a
+     * @param cols
+     *            the strings compared as sequence b
+     * @param junkFilter
+     *            the junk filter for the column strings, or null
+     * @param autoJunk
+     *            set false to disable the "automatic junk heuristic" that treats popular elements as junk
+     * @param out
+     *            receives the matrix; must have at least <code>rows.size() * cols.size()</code> elements remaining
+     * @param pool
+     *            the pool to compute bands in, or null to compute on the calling thread
+     * @throws IllegalArgumentException
+     *             if the matrix has more than {@link #MAX_DENSE_CELLS} cells, or the buffer has fewer elements remaining than the matrix has cells
+     */
+    public static void computeDense(List<String> rows, List<String> cols, SequenceMatcher.JunkFilter junkFilter, boolean autoJunk, FloatBuffer out,
+                    ForkJoinPool pool) {
+        long cells = denseCells(rows, cols);
+        if (out.remaining() < cells) {
+            throw new IllegalArgumentException("buffer has " + out.remaining() + " elements remaining, " + cells + " needed");
+        }
+        run(new Job(rows, cols, junkFilter, autoJunk, 0.0, out.slice()), pool);
+    }
+
+    /**
+     * @return the number of cells of the dense matrix of rows and cols, which is checked to be at most {@link #MAX_DENSE_CELLS}, so that the <code>int</code>
+     *         index of every cell is exact
+     */
+    private static long denseCells(List<String> rows, List<String> cols) {
+        long cells = (long) rows.size() * cols.size();
+        if (cells > MAX_DENSE_CELLS) {
+            throw new IllegalArgumentException("dense matrix of " + rows.size() + " x " + cols.size() + " = " + cells + " cells exceeds the limit of "
+                            + MAX_DENSE_CELLS + "; compute it sparse or over ranges of the rows");
+        }
+        return cells;
+    }
+
+    private static Sparse run(Job job, ForkJoinPool pool) {
+        BandTask task = new BandTask(job, 0, (job.rows.length + BAND_ROWS - 1) / BAND_ROWS);
+        return pool == null ? task.compute() : pool.invoke(task);
+    }
+
+    /**
+     * The pairs of a matrix whose ratio reached the cutoff, ordered by row and then by column, stored as parallel arrays.
+     */
+    public static final class Sparse {
+        private int[] rows;
+        private int[] cols;
+        private float[] scores;
+        private int count;
+
+        Sparse(int capacity) {
+            capacity = Math.max(capacity, 4);
+            this.rows = new int[capacity];
+            this.cols = new int[capacity];
+            this.scores = new float[capacity];
+        }
+
+        void add(int row, int col, float score) {
+            if (count == rows.length) {
+                int capacity = count * 2;
+                rows = Arrays.copyOf(rows, capacity);
+                cols = Arrays.copyOf(cols, capacity);
+                scores = Arrays.copyOf(scores, capacity);
+            }
+            rows[count] = row;
+            cols[count] = col;
+            scores[count] = score;
+            count++;
+        }
+
+        void addAll(Sparse other) {
+            for (int index = 0; index < other.count; index++) {
+                add(other.rows[index], other.cols[index], other.scores[index]);
+            }
+        }
+
+        /**
+         * @return the number of pairs
+         */
+        public int count() {
+            return count;
+        }
+
+        /**
+         * @param index
+         *            the index of a pair
+         * @return the index of the pair's row string
+         */
+        public int row(int index) {
+            return rows[Objects.checkIndex(index, count)];
+        }
+
+        /**
+         * @param index
+         *            the index of a pair
+         * @return the index of the pair's column string
+         */
+        public int col(int index) {
+            return cols[Objects.checkIndex(index, count)];
+        }
+
+        /**
+         * @param index
+         *            the index of a pair
+         * @return the ratio of the pair
+         */
+        public float score(int index) {
+            return scores[Objects.checkIndex(index, count)];
+        }
+    }
+
+    /**
+     * The shared, read-only inputs of one computation.
+     */
+    private static final class Job {
+        final String[] rows;
+        final CompiledSequence[] cols;
+        final double cutoff;
+
+        /** the dense output, or null for a sparse result */
+        final FloatBuffer dense;
+
+        Job(List<String> rows, List<String> cols, SequenceMatcher.JunkFilter junkFilter, boolean autoJunk, double cutoff, FloatBuffer dense) {
+            this.rows = rows.toArray(new String[0]);
+            this.cols = new CompiledSequence[cols.size()];
+            int c = 0;
+            for (String col : cols) {
+                this.cols[c++] = SequenceMatcher.compile(col, junkFilter, autoJunk);
+            }
+            this.cutoff = cutoff;
+            this.dense = dense;
+        }
+    }
+
+    /**
+     * Computes a range of bands, splitting it in half until a single band is left. For a sparse result, the pairs of the bands are returned in order; for a
+     * dense one they are written to the buffer and null is returned.
+     */
+    private static final class BandTask extends RecursiveTask<Sparse> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Job job;
+        private final int firstBand;
+        private final int endBand;
+
+        BandTask(Job job, int firstBand, int endBand) {
+            this.job = job;
+            this.firstBand = firstBand;
+            this.endBand = endBand;
+        }
+
+        @Override
+        protected Sparse compute() {
+            if (endBand - firstBand > 1) {
+                int middle = (firstBand + endBand) >>> 1;
+                BandTask left = new BandTask(job, firstBand, middle);
+                left.fork();
+                Sparse right = new BandTask(job, middle, endBand).compute();
+                Sparse result = left.join();
+                if (result != null) {
+                    result.addAll(right);
+                }
+                return result;
+            }
+            if (endBand == firstBand) {
+                return job.dense == null ? new Sparse(0) : null;
+            }
+            return computeBand(firstBand * BAND_ROWS, Math.min(job.rows.length, (firstBand + 1) * BAND_ROWS));
+        }
+
+        private Sparse computeBand(int rowLo, int rowHi) {
+            String[] rows = job.rows;
+            CompiledSequence[] cols = job.cols;
+            if (cols.length == 0) {
+                return job.dense == null ? new Sparse(0) : null;
+            }
+            SequenceMatcher s = new SequenceMatcher("", cols[0]);
+            // the buffer's position is not shared with other tasks, only its contents
+            FloatBuffer dense = job.dense == null ? null : job.dense.duplicate();
+            Sparse found = dense == null ? new Sparse(16) : null;
+
+            for (int colLo = 0; colLo < cols.length; colLo += BLOCK_COLUMNS) {
+                int colHi = Math.min(cols.length, colLo + BLOCK_COLUMNS);
+                for (int r = rowLo; r < rowHi; r++) {
+                    s.setSequenceA(rows[r]);
+                    for (int c = colLo; c < colHi; c++) {
+                        s.setSequenceB(cols[c]);
+                        if (dense != null) {
+                            // cannot overflow, the cell count was checked by denseCells
+                            dense.put(r * cols.length + c, (float) s.ratio());
+                        } else if (s.realQuickRatio() >= job.cutoff && s.quickRatio() >= job.cutoff) {
+                            double ratio = s.ratioIfAbove(job.cutoff);
+                            if (ratio >= 0) {
+                                found.add(r, c, (float) ratio);
+                            }
+                        }
+                    }
+                }
+            }
+            return found == null ? null : byRow(found, rowLo, rowHi);
+        }
+
+        /**
+         * Reorder the pairs of a band, which were found a block of columns at a time, by row. The sort is stable, so each row keeps its columns in order.
+         */
+        private static Sparse byRow(Sparse found, int rowLo, int rowHi) {
+            int[] starts = new int[rowHi - rowLo + 1];
+            for (int index = 0; index < found.count; index++) {
+                starts[found.rows[index] - rowLo + 1]++;
+            }
+            for (int r = 0; r < rowHi - rowLo; r++) {
+                starts[r + 1] += starts[r];
+            }
+            Sparse sorted = new Sparse(found.count);
+            sorted.count = found.count;
+            for (int index = 0; index < found.count; index++) {
+                int to = starts[found.rows[index] - rowLo]++;
+                sorted.rows[to] = found.rows[index];
+                sorted.cols[to] = found.cols[index];
+                sorted.scores[to] = found.scores[index];
+            }
+            return sorted;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package drewfarris.util.difflib;
+
+/**
+ * Finds the longest junk-free matching block with a suffix automaton instead of the dynamic programming over <code>b2j</code> used by
+ * {@link SequenceMatcher#findLongestMatch(int, int, int, int)}.
+ * <p>
+ * For a search over <code>a[alo:ahi]</code> and <code>b[blo:bhi]</code>, an automaton is built over <code>b[blo:bhi]</code> in which every element that is not
+ * in <code>b2j</code> (junk and popular elements) is replaced by a separator that never occurs in a, so no match can run across one. a is then streamed through
+ * the automaton, tracking the longest suffix of <code>a[alo:i+1]</code> that occurs in the text. Both steps are linear, so a search costs
+ * <code>O((ahi - alo) + (bhi - blo))</code> no matter how repetitive the sequences are, where the dynamic programming approach costs <code>O(ahi - alo)</code>
+ * times the number of occurrences of each element.
+ * </p>
+ * <p>
+ * The tie-breaking rules of difflib are honored: the first position in a at which a match of the greatest length ends gives the earliest i, and the first
+ * occurrence of that match in the text, recorded for every state as its first end position, gives the earliest j.
+ * </p>
+ * <p>
+ * The arrays backing the automaton are reused between searches, so an instance must not be shared between threads.
+ * </p>
+ */
+final class SuffixAutomaton {
+
+    /** symbol standing in for every element of b that is not in b2j; elements of a are never negative, so it never matches */
+    private static final int SEPARATOR = -1;
+
+    /** state -&gt; length of the longest string in the state */
+    private int[] len = new int[0];
+
+    /** state -&gt; suffix link */
+    private int[] link = new int[0];
+
+    /** state -&gt; end position in the text of the first occurrence of the strings in the state */
+    private int[] firstPos = new int[0];
+
+    /** state -&gt; first outgoing transition, or -1 */
+    private int[] head = new int[0];
+
+    /** transition -&gt; symbol */
+    private int[] edgeSymbol = new int[0];
+
+    /** transition -&gt; target state */
+    private int[] edgeTarget = new int[0];
+
+    /** transition -&gt; next transition out of the same state, or -1 */
+    private int[] edgeNext = new int[0];
+
+    /** open-addressed table of <code>transition + 1</code> keyed by (state, symbol); 0 marks an empty slot */
+    private int[] edgeTable = new int[0];
+
+    /** transition -&gt; source state, to resolve collisions in {@link #edgeTable} */
+    private int[] edgeSource = new int[0];
+
+    private int states;
+    private int edges;
+    private int last;
+
+    /** the match found by the last call to {@link #longestJunkFreeMatch(String, String, B2jIndex, int, int, int, int)} */
+    int besti;
+    int bestj;
+    int bestSize;
+
+    /**
+     * Find the longest matching block in <code>a[alo:ahi]</code> and <code>b[blo:bhi]</code> that contains no element missing from <code>b2j</code>, with the
+     * same tie-breaking as {@link SequenceMatcher#findLongestMatch(int, int, int, int)}, but without the extension by junk elements. The match is left in
+     * {@link #besti}, {@link #bestj} and {@link #bestSize}; <code>(alo, blo, 0)</code> if there is none.
+     *
+     * @param a
+     *            the first sequence
+     * @param b
+     *            the second sequence
+     * @param b2j
+     *            the index of b
+     * @param alo
+     *            the start index in sequence a
+     * @param ahi
+     *            the end index in sequence a
+     * @param blo
+     *            the start index in sequence b
+     * @param bhi
+     *            the end index in sequence b
+     */
+    void longestJunkFreeMatch(String a, String b, B2jIndex b2j, int alo, int ahi, int blo, int bhi) {
+        reset(bhi - blo);
+        for (int j = blo; j < bhi; j++) {
+            char elt = b.charAt(j);
+            extend(b2j.chain(elt) < 0 ? SEPARATOR : elt, j - blo);
+        }
+
+        int besti = alo;
+        int bestj = blo;
+        int bestSize = 0;
+        int state = 0;
+        int length = 0;
+        for (int i = alo; i < ahi; i++) {
+            int elt = a.charAt(i);
+            int target = transition(state, elt);
+            while (target < 0 && state != 0) {
+                state = link[state];
+                length = len[state];
+                target = transition(state, elt);
+            }
+            if (target < 0) {
+                length = 0;
+                continue;
+            }
+            state = target;
+            length++;
+            if (length > bestSize) {
+                besti = i - length + 1;
+                bestj = blo + firstPos[state] - length + 1;
+                bestSize = length;
+            }
+        }
+        this.besti = besti;
+        this.bestj = bestj;
+        this.bestSize = bestSize;
+    }
+
+    /**
+     * Clear the automaton, leaving only the initial state, and make room for a text of the given length.
+     */
+    private void reset(int n) {
+        // a suffix automaton over n symbols has at most 2n - 1 states and 3n - 4 transitions
+        int maxStates = 2 * n + 1;
+        int maxEdges = 3 * n + 4;
+        if (len.length < maxStates) {
+            len = new int[maxStates];
+            link = new int[maxStates];
+            firstPos = new int[maxStates];
+            head = new int[maxStates];
+        }
+        if (edgeSymbol.length < maxEdges) {
+            edgeSymbol = new int[maxEdges];
+            edgeTarget = new int[maxEdges];
+            edgeNext = new int[maxEdges];
+            edgeSource = new int[maxEdges];
+            edgeTable = new int[Integer.highestOneBit(maxEdges * 2 - 1) << 1];
+        } else {
+            // Only clear the slots used by the previous search, so that a small search after a large one stays cheap. Removing them in the reverse of the
+            // order they were inserted keeps every remaining probe chain intact.
+            for (int e = edges - 1; e >= 0; e--) {
+                edgeTable[slot(edgeSource[e], edgeSymbol[e])] = 0;
+            }
+        }
+        states = 1;
+        edges = 0;
+        last = 0;
+        len[0] = 0;
+        link[0] = -1;
+        firstPos[0] = -1;
+        head[0] = -1;
+    }
+
+    /**
+     * Append one symbol, at the given position of the text, to the automaton.
+     */
+    private void extend(int symbol, int pos) {
+        int cur = newState(len[last] + 1, pos);
+        int p = last;
+        while (p != -1 && transition(p, symbol) < 0) {
+            addTransition(p, symbol, cur);
+            p = link[p];
+        }
+        if (p == -1) {
+            link[cur] = 0;
+        } else {
+            int q = transition(p, symbol);
+            if (len[p] + 1 == len[q]) {
+                link[cur] = q;
+            } else {
+                int clone = newState(len[p] + 1, firstPos[q]);
+                for (int e = head[q]; e != -1; e = edgeNext[e]) {
+                    addTransition(clone, edgeSymbol[e], edgeTarget[e]);
+                }
+                link[clone] = link[q];
+                while (p != -1) {
+                    int e = edgeTable[slot(p, symbol)] - 1;
+                    if (edgeTarget[e] != q) {
+                        break;
+                    }
+                    edgeTarget[e] = clone;
+                    p = link[p];
+                }
+                link[q] = clone;
+                link[cur] = clone;
+            }
+        }
+        last = cur;
+    }
+
+    private int newState(int length, int pos) {
+        int state = states++;
+        len[state] = length;
+        link[state] = -1;
+        firstPos[state] = pos;
+        head[state] = -1;
+        return state;
+    }
+
+    private int transition(int state, int symbol) {
+        int e = edgeTable[slot(state, symbol)] - 1;
+        return e < 0 ? -1 : edgeTarget[e];
+    }
+
+    private void addTransition(int state, int symbol, int target) {
+        int e = edges++;
+        edgeSymbol[e] = symbol;
+        edgeTarget[e] = target;
+        edgeSource[e] = state;
+        edgeNext[e] = head[state];
+        head[state] = e;
+        edgeTable[slot(state, symbol)] = e + 1;
+    }
+
+    /**
+     * Find the slot of {@link #edgeTable} holding the transition out of state on symbol, or the empty slot where it would be inserted. The table is never more
+     * than half full, so the probe always terminates.
+     */
+    private int slot(int state, int symbol) {
+        int mask = edgeTable.length - 1;
+        int h = state * 0x9E3779B9 + symbol * 0x85EBCA6B;
+        int slot = (h ^ (h >>> 16)) & mask;
+        int e;
+        while ((e = edgeTable[slot] - 1) >= 0 && (edgeSource[e] != state || edgeSymbol[e] != symbol)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
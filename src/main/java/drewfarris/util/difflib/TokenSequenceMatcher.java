@@ -0,0 +1,413 @@
+package drewfarris.util.difflib;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * {@link SequenceMatcher} for text compared token by token, such as word by word, with the tokens found by a {@link Tokenizer}.
+ * <p>
+ * No token is copied into a string. Each distinct token of b is given a dense <code>int</code> id through a hash table keyed by a hash of the token's chars,
+ * computed in place, and a token only gets an existing id once its chars have been compared with those of the first token with that id. Each token of a gets
+ * the id of the equal token of b, or an id that matches nothing. The ids are matched with an {@link IntSequenceMatcher}, so the results are those of
+ * {@link SequenceMatcher} for the two lists of token strings.
+ * </p>
+ * <p>
+ * Matching blocks and opcodes are in token offsets. {@link #getCharOpcodes()} gives opcodes in char offsets, for highlighting: each pair of matching tokens is
+ * an equal range of chars, and so is the text before or after a pair, or before or after all the tokens, when it is the same in both texts. Everything else,
+ * including whitespace that differs between two matching tokens, is inserted, deleted or replaced, so the char opcodes cover all of both texts with the same
+ * tags and ordering as {@link SequenceMatcher#getOpcodes()}, and their equal ranges have equal text. For the exact span of a single token, use
+ * {@link #tokenStartA(int)} and {@link #tokenEndA(int)}, or their b equivalents.
+ * </p>
+ * <p>
+ * The texts are not copied, and must not be changed while the matcher is using them.
+ * </p>
+ */
+public final class TokenSequenceMatcher {
+
+    private final Tokenizer tokenizer;
+
+    private Tokens a;
+    private Tokens b;
+
+    /** the distinct tokens of b */
+    private InternTable ids;
+
+    private final IntSequenceMatcher matcher;
+
+    /** the opcodes in char offsets, cleared when either sequence changes */
+    private PackedOpcodes charOpcodes;
+
+    /**
+     * Construct a TokenSequenceMatcher with no junk filter and the "automatic junk heuristic" enabled.
+     *
+     * @param tokenizer
+     *            splits both texts into tokens
+     * @param a
+     *            the first of two texts to be compared
+     * @param b
+     *            the second of two texts to be compared
+     * @throws IllegalArgumentException
+     *             if the tokenizer reports a span that is empty, out of order or outside its text
+     */
+    public TokenSequenceMatcher(Tokenizer tokenizer, CharSequence a, CharSequence b) {
+        this(tokenizer, null, a, b, true);
+    }
+
+    /**
+     * Construct a TokenSequenceMatcher.
+     *
+     * @param tokenizer
+     *            splits both texts into tokens
+     * @param junkFilter
+     *            true for the tokens of b that are junk, or null if no token is junk; called once per distinct token of b
+     * @param a
+     *            the first of two texts to be compared
+     * @param b
+     *            the second of two texts to be compared
+     * @param autoJunk
+     *            set false to disable the "automatic junk heuristic" that treats popular tokens as junk
+     * @throws IllegalArgumentException
+     *             if b has too many tokens to intern, more than 2<sup>29</sup>, or if the tokenizer reports a span that is empty, out of order or outside its
+     *             text
+     */
+    public TokenSequenceMatcher(Tokenizer tokenizer, JunkFilter junkFilter, CharSequence a, CharSequence b, boolean autoJunk) {
+        this.tokenizer = Objects.requireNonNull(tokenizer, "tokenizer");
+        this.matcher = new IntSequenceMatcher(junkFilter == null ? null : id -> {
+            int token = ids.firstItem(id);
+            return junkFilter.isJunk(this.b.text, this.b.starts[token], this.b.ends[token]);
+        }, new int[0], new int[0], autoJunk);
+        setSequences(a, b);
+    }
+
+    /**
+     * Set the two texts to be compared
+     *
+     * @param a
+     *            the first text to be compared
+     * @param b
+     *            the second text to be compared
+     * @throws IllegalArgumentException
+     *             if the tokenizer reports a span that is empty, out of order or outside its text
+     */
+    public void setSequences(CharSequence a, CharSequence b) {
+        this.a = new Tokens(tokenizer, a);
+        setSequenceB(b);
+    }
+
+    /**
+     * Set the first text to be compared.
+     * <p>
+     * The second text to be compared is not changed.
+     * </p>
+     *
+     * @param a
+     *            the first text to be compared
+     * @throws IllegalArgumentException
+     *             if the tokenizer reports a span that is empty, out of order or outside its text
+     */
+    public void setSequenceA(CharSequence a) {
+        this.a = new Tokens(tokenizer, a);
+        internA();
+    }
+
+    /**
+     * Set the second text to be compared. The tokens of the first text are given new ids, so this costs a lookup per token of a as well as of b.
+     * <p>
+     * The first text to be compared is not changed.
+     * </p>
+     *
+     * @param b
+     *            the second text to be compared
+     * @throws IllegalArgumentException
+     *             if the tokenizer reports a span that is empty, out of order or outside its text
+     */
+    public void setSequenceB(CharSequence b) {
+        Tokens tokens = new Tokens(tokenizer, b);
+        InternTable ids = new InternTable(tokens.count);
+        InternTable.Equality sameInB = (token, firstToken) -> tokens.sameToken(token, tokens, firstToken);
+        int[] bIds = new int[tokens.count];
+        for (int j = 0; j < bIds.length; j++) {
+            bIds[j] = ids.intern(tokens.hashes[j], j, sameInB);
+        }
+        this.b = tokens;
+        this.ids = ids;
+        matcher.setSequenceB(bIds);
+        internA();
+    }
+
+    /**
+     * Give each token of a the id of the equal token of b.
+     */
+    private void internA() {
+        Tokens a = this.a;
+        Tokens b = this.b;
+        InternTable.Equality sameAsInB = (token, firstToken) -> a.sameToken(token, b, firstToken);
+        int[] aIds = new int[a.count];
+        for (int i = 0; i < aIds.length; i++) {
+            aIds[i] = ids.find(a.hashes[i], i, sameAsInB);
+        }
+        this.charOpcodes = null;
+        matcher.setSequenceA(aIds);
+    }
+
+    /**
+     * @return the number of tokens in the first text
+     */
+    public int tokenCountA() {
+        return a.count;
+    }
+
+    /**
+     * @return the number of tokens in the second text
+     */
+    public int tokenCountB() {
+        return b.count;
+    }
+
+    /**
+     * @param token
+     *            a token of the first text, from 0
+     * @return the offset of its first char
+     */
+    public int tokenStartA(int token) {
+        return a.starts[Objects.checkIndex(token, a.count)];
+    }
+
+    /**
+     * @param token
+     *            a token of the first text, from 0
+     * @return the offset just past its last char
+     */
+    public int tokenEndA(int token) {
+        return a.ends[Objects.checkIndex(token, a.count)];
+    }
+
+    /**
+     * @param token
+     *            a token of the second text, from 0
+     * @return the offset of its first char
+     */
+    public int tokenStartB(int token) {
+        return b.starts[Objects.checkIndex(token, b.count)];
+    }
+
+    /**
+     * @param token
+     *            a token of the second text, from 0
+     * @return the offset just past its last char
+     */
+    public int tokenEndB(int token) {
+        return b.ends[Objects.checkIndex(token, b.count)];
+    }
+
+    /**
+     * Find the longest matching block in <code>a[alo:ahi]</code> and <code>b[blo:bhi]</code>, in token offsets, as
+     * {@link SequenceMatcher#findLongestMatch(int, int, int, int)} does.
+     *
+     * @param alo
+     *            the start of the range of a
+     * @param ahi
+     *            the end of the range of a
+     * @param blo
+     *            the start of the range of b
+     * @param bhi
+     *            the end of the range of b
+     * @return the longest matching block
+     */
+    public SequenceMatcher.Match findLongestMatch(int alo, int ahi, int blo, int bhi) {
+        return matcher.findLongestMatch(alo, ahi, blo, bhi);
+    }
+
+    /**
+     * @return the matching blocks, in token offsets; see {@link SequenceMatcher#getMatchingBlocks()}
+     */
+    public List<SequenceMatcher.Match> getMatchingBlocks() {
+        return matcher.getMatchingBlocks();
+    }
+
+    /**
+     * @return the matching blocks, in token offsets; see {@link SequenceMatcher#getPackedMatchingBlocks()}
+     */
+    public PackedMatchingBlocks getPackedMatchingBlocks() {
+        return matcher.getPackedMatchingBlocks();
+    }
+
+    /**
+     * @return the opcodes, in token offsets; see {@link SequenceMatcher#getOpcodes()}
+     */
+    public List<SequenceMatcher.Opcode> getOpcodes() {
+        return matcher.getOpcodes();
+    }
+
+    /**
+     * @return the opcodes, in token offsets; see {@link SequenceMatcher#getPackedOpcodes()}
+     */
+    public PackedOpcodes getPackedOpcodes() {
+        return matcher.getPackedOpcodes();
+    }
+
+    /**
+     * @return the opcodes in char offsets into the texts; see the class documentation for how they follow {@link #getOpcodes()}
+     */
+    public List<SequenceMatcher.Opcode> getCharOpcodes() {
+        return getPackedCharOpcodes().asList();
+    }
+
+    /**
+     * @return the opcodes of {@link #getCharOpcodes()}, packed
+     */
+    public PackedOpcodes getPackedCharOpcodes() {
+        if (charOpcodes == null) {
+            PackedOpcodes.Builder builder = new PackedOpcodes.Builder(16);
+            SequenceMatcher.AdjacentMatchMerger merger = new SequenceMatcher.AdjacentMatchMerger(new SequenceMatcher.OpcodeEmitter(builder::add));
+            PackedMatchingBlocks blocks = matcher.getPackedMatchingBlocks();
+            // the text before each pair of matching tokens, and after each block, where the sentinel block's is after the last tokens; the text after a
+            // block may also be the text before the next block's first token on one side, and is only matched once
+            int gapA = -1;
+            int gapB = -1;
+            for (int index = 0; index < blocks.count(); index++) {
+                int i = blocks.aOffset(index);
+                int j = blocks.bOffset(index);
+                if (i != gapA && j != gapB) {
+                    visitGap(merger, i, j);
+                }
+                for (int end = i + blocks.size(index); i < end; i++, j++) {
+                    merger.visitMatch(a.starts[i], b.starts[j], a.ends[i] - a.starts[i]);
+                    if (i + 1 < end) {
+                        visitGap(merger, i + 1, j + 1);
+                    }
+                }
+                if (blocks.size(index) > 0) {
+                    visitGap(merger, i, j);
+                }
+                gapA = i;
+                gapB = j;
+            }
+            merger.finish(a.text.length(), b.text.length());
+            this.charOpcodes = builder.build();
+        }
+        return charOpcodes;
+    }
+
+    /**
+     * Visit the text before a token of a and a token of b as a matching block if the two are equal and not empty.
+     */
+    private void visitGap(SequenceMatcher.MatchVisitor visitor, int i, int j) {
+        int start = a.gapStart(i);
+        int otherStart = b.gapStart(j);
+        int length = a.boundary(i) - start;
+        if (length > 0 && length == b.boundary(j) - otherStart && sameChars(a.text, start, b.text, otherStart, length)) {
+            visitor.visitMatch(start, otherStart, length);
+        }
+    }
+
+    /**
+     * @return true if <code>x[xStart:xStart+length] == y[yStart:yStart+length]</code>
+     */
+    private static boolean sameChars(CharSequence x, int xStart, CharSequence y, int yStart, int length) {
+        for (int k = 0; k < length; k++) {
+            if (x.charAt(xStart + k) != y.charAt(yStart + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a measure of the texts' similarity, counted in tokens; see {@link SequenceMatcher#ratio()}
+     */
+    public double ratio() {
+        return matcher.ratio();
+    }
+
+    /**
+     * @return an upper bound on {@link #ratio()}, see {@link SequenceMatcher#quickRatio()}
+     */
+    public double quickRatio() {
+        return matcher.quickRatio();
+    }
+
+    /**
+     * @return an upper bound on {@link #quickRatio()}, see {@link SequenceMatcher#realQuickRatio()}
+     */
+    public double realQuickRatio() {
+        return matcher.realQuickRatio();
+    }
+
+    /**
+     * Junk filter over tokens
+     */
+    public interface JunkFilter {
+        /**
+         * @param text
+         *            the second text
+         * @param start
+         *            the offset of the first char of the first token of b with these chars
+         * @param end
+         *            the offset just past its last char
+         * @return true if the token should be considered junk
+         */
+        boolean isJunk(CharSequence text, int start, int end);
+    }
+
+    /**
+     * The spans of the tokens of a text, with a hash of each token's chars.
+     */
+    private static final class Tokens implements Tokenizer.TokenSink {
+        final CharSequence text;
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        int[] hashes = new int[16];
+        int count;
+
+        Tokens(Tokenizer tokenizer, CharSequence text) {
+            this.text = Objects.requireNonNull(text, "text");
+            tokenizer.tokenize(text, this);
+        }
+
+        @Override
+        public void token(int start, int end) {
+            if (start >= end || end > text.length() || (count > 0 ? start < ends[count - 1] : start < 0)) {
+                throw new IllegalArgumentException("token [" + start + ", " + end + ") is empty, out of order or outside the text");
+            }
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+                hashes = Arrays.copyOf(hashes, count * 2);
+            }
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + text.charAt(i);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            hashes[count] = h;
+            count++;
+        }
+
+        /**
+         * @return the char offset of a token boundary: the start of the token, or the end of the text past the last token
+         */
+        int boundary(int token) {
+            return token == count ? text.length() : starts[token];
+        }
+
+        /**
+         * @return the char offset of the text before a token boundary: the end of the previous token, or 0 before the first token
+         */
+        int gapStart(int token) {
+            return token == 0 ? 0 : ends[token - 1];
+        }
+
+        /**
+         * @return true if a token has the same chars as a token of other
+         */
+        boolean sameToken(int token, Tokens other, int otherToken) {
+            int start = starts[token];
+            int length = ends[token] - start;
+            int otherStart = other.starts[otherToken];
+            return length == other.ends[otherToken] - otherStart && sameChars(text, start, other.text, otherStart, length);
+        }
+    }
+}
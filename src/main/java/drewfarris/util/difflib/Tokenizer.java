@@ -0,0 +1,62 @@
+package drewfarris.util.difflib;
+
+/**
+ * Splits text into tokens, for word-level matching with {@link TokenSequenceMatcher}.
+ * <p>
+ * A tokenizer reports each token as a span of offsets into the text rather than as a string, so no token is copied. Spans must be reported in order, must not
+ * overlap, must not be empty and must lie within the text; the text between them, such as whitespace, is not part of any token. A sink may reject a span that
+ * breaks these rules with an {@link IllegalArgumentException}, which the tokenizer should let propagate.
+ * </p>
+ */
+public interface Tokenizer {
+
+    /** tokens are maximal runs of letters and digits, as {@link Character#isLetterOrDigit(int)} decides; everything else separates them */
+    Tokenizer WORDS = (text, sink) -> runs(text, sink, false);
+
+    /** tokens are maximal runs of anything but whitespace, as {@link Character#isWhitespace(int)} decides */
+    Tokenizer NON_WHITESPACE = (text, sink) -> runs(text, sink, true);
+
+    /**
+     * Report the tokens of text to sink, in order.
+     *
+     * @param text
+     *            the text to split
+     * @param sink
+     *            receives each token's span
+     */
+    void tokenize(CharSequence text, TokenSink sink);
+
+    /**
+     * Report the maximal runs of letters and digits, or of non-whitespace, in text.
+     */
+    private static void runs(CharSequence text, TokenSink sink, boolean nonWhitespace) {
+        int start = -1;
+        for (int i = 0; i < text.length();) {
+            int codePoint = Character.codePointAt(text, i);
+            boolean inToken = nonWhitespace ? !Character.isWhitespace(codePoint) : Character.isLetterOrDigit(codePoint);
+            if (inToken && start < 0) {
+                start = i;
+            } else if (!inToken && start >= 0) {
+                sink.token(start, i);
+                start = -1;
+            }
+            i += Character.charCount(codePoint);
+        }
+        if (start >= 0) {
+            sink.token(start, text.length());
+        }
+    }
+
+    /** Receives the spans found by a {@link Tokenizer} */
+    interface TokenSink {
+        /**
+         * @param start
+         *            the offset of the token's first char
+         * @param end
+         *            the offset just past the token's last char
+         * @throws IllegalArgumentException
+         *             if the span is empty, outside the text, or starts before the end of the previous span
+         */
+        void token(int start, int end);
+    }
+}
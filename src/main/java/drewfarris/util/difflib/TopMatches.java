@@ -0,0 +1,141 @@
+package drewfarris.util.difflib;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The best n possibilities seen so far by {@link SequenceMatcher#getCloseMatches(String, List, int, double)} and {@link CloseMatchIndex}, kept in a bounded
+ * min-heap.
+ * <p>
+ * Possibilities are ranked by score, highest first, and then by the order in which they were offered, earliest first, which is the order a stable sort of all
+ * the scores would give. Once the heap is full, a possibility has to beat the worst one kept, so {@link #admits(double)} can reject it as soon as any upper
+ * bound on its score is no better than that; the effective cutoff rises as better possibilities are found. Possibilities may be offered in any order, but
+ * pruning works best when the most promising ones come first.
+ * </p>
+ */
+final class TopMatches {
+
+    /** worst first: lowest score, then latest index */
+    private static final Comparator<Candidate> WORST_FIRST = Comparator.comparingDouble((Candidate c) -> c.score).thenComparing((Candidate c) -> c.index,
+                    Comparator.reverseOrder());
+
+    private final int n;
+    private final double cutoff;
+    private final PriorityQueue<Candidate> heap;
+
+    /**
+     * @param n
+     *            the maximum number of possibilities to keep, &gt; 0
+     * @param cutoff
+     *            the minimum score of a possibility that is kept
+     */
+    TopMatches(int n, double cutoff) {
+        this.n = n;
+        this.cutoff = cutoff;
+        this.heap = new PriorityQueue<>(Math.min(n, 1024) + 1, WORST_FIRST);
+    }
+
+    /**
+     * @param bound
+     *            an upper bound on the score of a possibility not yet offered
+     * @return false if the possibility cannot be kept, whatever its exact score
+     */
+    boolean admits(double bound) {
+        if (bound < cutoff) {
+            return false;
+        }
+        // a tie with the worst kept loses, because the possibility was offered later
+        return heap.size() < n || bound > heap.peek().score;
+    }
+
+    /**
+     * @return the lowest score that a possibility can have and still be kept; a possibility with exactly this score may lose on its position
+     */
+    double threshold() {
+        return heap.size() < n ? cutoff : Math.max(cutoff, heap.peek().score);
+    }
+
+    /**
+     * {@link #admits(double)} for a possibility that may come before some of those already offered.
+     *
+     * @param bound
+     *            an upper bound on the score of a possibility not yet offered
+     * @param index
+     *            the position of the possibility in the input, or -1 to ask about possibilities at any position
+     * @return false if the possibility cannot be kept, whatever its exact score
+     */
+    boolean admits(double bound, long index) {
+        if (bound < cutoff) {
+            return false;
+        }
+        if (heap.size() < n) {
+            return true;
+        }
+        Candidate worst = heap.peek();
+        return bound > worst.score || bound == worst.score && index < worst.index;
+    }
+
+    /**
+     * Offer a possibility, keeping it if it is among the best n so far.
+     *
+     * @param score
+     *            the score of the possibility
+     * @param index
+     *            the position of the possibility in the input, used to break ties
+     * @param word
+     *            the possibility
+     */
+    void offer(double score, long index, String word) {
+        if (admits(score, index)) {
+            add(new Candidate(score, index, word));
+        }
+    }
+
+    /**
+     * Merge in the possibilities kept by another instance with the same n and cutoff, which may have been offered possibilities of any index.
+     *
+     * @param other
+     *            the possibilities to merge
+     */
+    void addAll(TopMatches other) {
+        for (Candidate candidate : other.heap) {
+            add(candidate);
+        }
+    }
+
+    private void add(Candidate candidate) {
+        if (heap.size() < n) {
+            heap.add(candidate);
+        } else if (WORST_FIRST.compare(candidate, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(candidate);
+        }
+    }
+
+    /**
+     * @return the possibilities kept, best first
+     */
+    List<String> words() {
+        List<Candidate> candidates = new ArrayList<>(heap);
+        candidates.sort(WORST_FIRST.reversed());
+        List<String> words = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            words.add(candidate.word);
+        }
+        return words;
+    }
+
+    private static final class Candidate {
+        final double score;
+        final long index;
+        final String word;
+
+        Candidate(double score, long index, String word) {
+            this.score = score;
+            this.index = index;
+            this.word = word;
+        }
+    }
+}
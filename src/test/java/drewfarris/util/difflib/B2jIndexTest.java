@@ -0,0 +1,90 @@
+package drewfarris.util.difflib;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the compressed-sparse-row b2j index.
+ */
+public class B2jIndexTest {
+
+    private static int[] chain(B2jIndex index, char elt) {
+        int entry = index.chain(elt);
+        if (entry < 0) {
+            return new int[0];
+        }
+        return Arrays.copyOfRange(index.positions(), index.start(entry), index.end(entry));
+    }
+
+    @Test
+    public void testPositionsAreGroupedAndAscending() {
+        B2jIndex index = B2jIndex.build("abcabca", null, true);
+        assertArrayEquals(new int[] {0, 3, 6}, chain(index, 'a'));
+        assertArrayEquals(new int[] {1, 4}, chain(index, 'b'));
+        assertArrayEquals(new int[] {2, 5}, chain(index, 'c'));
+        assertArrayEquals(new int[0], chain(index, 'z'));
+        assertEquals(0, index.count('z'));
+    }
+
+    @Test
+    public void testManyDistinctElements() {
+        // enough distinct elements to force the table and entry arrays to grow several times
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append((char) (0x4e00 + (i * 7) % 1000));
+        }
+        B2jIndex index = B2jIndex.build(sb.toString(), null, false);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(2, index.count((char) (0x4e00 + i)));
+        }
+    }
+
+    @Test
+    public void testJunkIsFlaggedNotCounted() {
+        B2jIndex index = B2jIndex.build("a b c", ch -> ch == ' ', true);
+        assertArrayEquals(new int[0], chain(index, ' '));
+        assertEquals(2, index.count(' '));
+        assertTrue(index.isJunk(' '));
+        assertFalse(index.isJunk('a'));
+        assertEquals(Collections.singleton(' '), index.junk());
+    }
+
+    @Test
+    public void testPopularElements() {
+        String b = "x".repeat(150) + "abc" + "x".repeat(150);
+        B2jIndex index = B2jIndex.build(b, null, true);
+        assertArrayEquals(new int[0], chain(index, 'x'));
+        assertEquals(300, index.count('x'));
+        assertFalse(index.isJunk('x'));
+        assertArrayEquals(new int[] {150}, chain(index, 'a'));
+
+        index = B2jIndex.build(b, null, false);
+        assertEquals(300, chain(index, 'x').length);
+        Set<Character> junk = index.junk();
+        assertTrue(junk.isEmpty());
+    }
+
+    @Test
+    public void testLatin1MatchesHashedIndex() {
+        String b = "the quick brown fox jumps over the lazy dog \u00e9\u00ff".repeat(8);
+        byte[] latin1 = b.getBytes(StandardCharsets.ISO_8859_1);
+        B2jIndex hashed = B2jIndex.build(b, ch -> ch == ' ', true);
+        B2jIndex direct = B2jIndex.buildLatin1(latin1, latin1.length, ch -> ch == ' ', true);
+        for (char c = 0; c < 256; c++) {
+            assertArrayEquals(chain(hashed, c), chain(direct, c));
+            assertEquals(hashed.count(c), direct.count(c));
+            assertEquals(hashed.isJunk(c), direct.isJunk(c));
+        }
+        assertEquals(hashed.junk(), direct.junk());
+        assertEquals(-1, direct.chain('\u4e00'));
+    }
+}
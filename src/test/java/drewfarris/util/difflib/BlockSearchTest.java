@@ -0,0 +1,52 @@
+package drewfarris.util.difflib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that the element views of the shared search agree, so that the String, Latin-1 and <code>int[]</code> matchers find the same blocks.
+ */
+public class BlockSearchTest {
+
+    private static final String A = "qabxcd abcd";
+    private static final String B = "abycdf abcd ";
+
+    private static BlockSearch.Elements[] views(String a, String b) {
+        return new BlockSearch.Elements[] {new BlockSearch.StringElements(a, b),
+                new BlockSearch.Latin1Elements(a.getBytes(StandardCharsets.ISO_8859_1), b.getBytes(StandardCharsets.ISO_8859_1)),
+                new BlockSearch.IntElements(a.chars().toArray(), b.chars().toArray())};
+    }
+
+    @Test
+    public void testEqualRun() {
+        for (BlockSearch.Elements elements : views(A, B)) {
+            assertEquals(2, elements.equalRun(1, A.length(), 0, B.length()));
+            assertEquals(5, elements.equalRun(6, A.length(), 6, B.length()));
+            // limited by the shorter range
+            assertEquals(3, elements.equalRun(6, 9, 6, B.length()));
+            assertEquals(0, elements.equalRun(0, A.length(), 0, B.length()));
+            assertEquals(0, elements.equalRun(A.length(), A.length(), 0, B.length()));
+        }
+    }
+
+    @Test
+    public void testFindLongestMatch() {
+        B2jIndex hashed = B2jIndex.build(B, c -> c == ' ', false);
+        B2jIndex latin1 = B2jIndex.buildLatin1(B.getBytes(StandardCharsets.ISO_8859_1), B.length(), c -> c == ' ', false);
+        BlockSearch.Scratch scratch = new BlockSearch.Scratch();
+        for (BlockSearch.Elements elements : views(A, B)) {
+            for (B2jIndex b2j : new B2jIndex[] {hashed, latin1}) {
+                // " abcd" is only matched as "abcd" and then extended over the junk blank on both sides
+                BlockSearch.findLongestMatch(elements, b2j, 0, A.length(), 0, B.length(), scratch);
+                assertEquals(6, scratch.besti);
+                assertEquals(6, scratch.bestj);
+                assertEquals(5, scratch.bestSize);
+            }
+        }
+        assertEquals(1.0, BlockSearch.ratio(0, 0));
+        assertEquals(0.5, BlockSearch.ratio(1, 4));
+    }
+}
@@ -0,0 +1,43 @@
+package drewfarris.util.difflib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that queries of a CloseMatchIndex return exactly what getCloseMatches returns over the same list.
+ */
+public class CloseMatchIndexTest {
+
+    @Test
+    public void testGetCloseMatches() {
+        List<String> possibilities = Arrays.asList("ape", "apple", "peach", "puppy");
+        CloseMatchIndex index = new CloseMatchIndex(possibilities);
+        assertEquals(4, index.size());
+        assertEquals(Arrays.asList("apple", "ape"), index.getCloseMatches("appel", 3, 0.6));
+        assertEquals(SequenceMatcher.getCloseMatches("appel", possibilities, 3, 0.6), index.getCloseMatches("appel", 3, 0.6));
+    }
+
+    @Test
+    public void testDuplicatesAndEmptyStrings() {
+        List<String> possibilities = Arrays.asList("", "ab", "ba", "ab", "", "b");
+        CloseMatchIndex index = new CloseMatchIndex(possibilities);
+        for (String word : Arrays.asList("", "a", "ab", "bab")) {
+            for (double cutoff : new double[] {0.0, 0.5, 1.0}) {
+                assertEquals(SequenceMatcher.getCloseMatches(word, possibilities, 4, cutoff), index.getCloseMatches(word, 4, cutoff));
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        CloseMatchIndex index = new CloseMatchIndex(Collections.singletonList("apple"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> index.getCloseMatches("apple", 0, 0.6));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> index.getCloseMatches("apple", 3, 1.1));
+    }
+}
@@ -0,0 +1,49 @@
+package drewfarris.util.difflib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that strings compared by code point treat supplementary characters as single elements.
+ */
+public class CodePointSequenceMatcherTest {
+
+    private static final String GRINNING = new String(Character.toChars(0x1F600));
+    private static final String SMILEY = new String(Character.toChars(0x1F603));
+
+    @Test
+    public void testSurrogatePairs() {
+        String a = "a" + GRINNING + "b";
+        String b = "a" + SMILEY + "b";
+        // by char, the two emoji share their high surrogate
+        assertEquals(0.75, new SequenceMatcher(a, b).ratio());
+
+        CodePointSequenceMatcher s = new CodePointSequenceMatcher(a, b);
+        assertEquals(2.0 / 3, s.ratio(), 1e-12);
+        assertEquals(Arrays.asList(new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.EQUAL, 0, 1, 0, 1),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.REPLACE, 1, 2, 1, 2),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.EQUAL, 2, 3, 2, 3)), s.getOpcodes());
+        assertEquals(Arrays.asList(new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.EQUAL, 0, 1, 0, 1),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.REPLACE, 1, 3, 1, 3),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.EQUAL, 3, 4, 3, 4)), s.getCharOpcodes());
+        assertEquals(4, s.charOffsetA(3));
+
+        s.setSequenceB("x" + GRINNING + GRINNING);
+        assertEquals(Arrays.asList(new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.REPLACE, 0, 1, 0, 1),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.EQUAL, 1, 3, 1, 3),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.REPLACE, 3, 4, 3, 5)), s.getCharOpcodes());
+    }
+
+    @Test
+    public void testJunk() {
+        // a match can't start at a junk code point, but is extended over one
+        CodePointSequenceMatcher s = new CodePointSequenceMatcher(codePoint -> codePoint == 0x1F600, GRINNING + "ab", "c" + GRINNING + "ab", true);
+        assertEquals(new SequenceMatcher.Match(1, 2, 2), s.findLongestMatch(1, 3, 2, 4));
+        assertEquals(Arrays.asList(new SequenceMatcher.Match(0, 1, 3), new SequenceMatcher.Match(3, 4, 0)), s.getMatchingBlocks());
+        assertEquals(Arrays.asList(new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.INSERT, 0, 0, 0, 1),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.EQUAL, 0, 4, 1, 5)), s.getCharOpcodes());
+    }
+}
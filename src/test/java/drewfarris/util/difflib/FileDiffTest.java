@@ -0,0 +1,111 @@
+package drewfarris.util.difflib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that diffing files line by line gives the same results as matching their lists of lines.
+ */
+public class FileDiffTest {
+
+    @Test
+    public void testLines() {
+        LineSequence lines = lines("one\r\ntwo\n\nthree");
+        assertEquals(4, lines.size());
+        assertEquals("one\r\n", lines.line(0, StandardCharsets.UTF_8));
+        assertEquals("\n", lines.line(2, StandardCharsets.UTF_8));
+        assertEquals("three", lines.line(3, StandardCharsets.UTF_8));
+        assertEquals(10, lines.start(3));
+        assertEquals(15, lines.end(3));
+        assertEquals(lines("x\ntwo\n").hash(1), lines.hash(1));
+        // lines are only the same if their bytes are, whatever their hashes
+        Assertions.assertTrue(lines.sameLine(1, lines("x\ntwo\n"), 1));
+        Assertions.assertFalse(lines.sameLine(1, lines("twx\n"), 0));
+        Assertions.assertFalse(lines.sameLine(1, lines("two"), 0));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> lines.hash(4));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> lines.hash(-1));
+        assertEquals(0, lines("").size());
+        assertEquals(1, lines("\n").size());
+    }
+
+    @Test
+    public void testCompareFiles(@TempDir Path dir) throws IOException {
+        Path a = Files.write(dir.resolve("a.txt"), "one\ntwo\nthree\nfour\nfive\n".getBytes(StandardCharsets.UTF_8));
+        Path b = Files.write(dir.resolve("b.txt"), "zero\none\nthree\nfour\n4.5\nfive".getBytes(StandardCharsets.UTF_8));
+        FileDiff diff = FileDiff.compare(a, b);
+        // "five" without its newline is a different line
+        assertEquals(Arrays.asList(new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.INSERT, 0, 0, 0, 1),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.EQUAL, 0, 1, 1, 2),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.DELETE, 1, 2, 2, 2),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.EQUAL, 2, 4, 2, 4),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.REPLACE, 4, 5, 4, 6)), diff.getOpcodes());
+        assertEquals("4.5\n", diff.getB().line(4, StandardCharsets.UTF_8));
+
+        Path empty = Files.write(dir.resolve("empty.txt"), new byte[0]);
+        assertEquals(Collections.singletonList(new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.DELETE, 0, 5, 0, 0)),
+                        FileDiff.compare(a, empty).getOpcodes());
+        assertEquals(1.0, FileDiff.compare(empty, empty).ratio());
+    }
+
+    @Test
+    public void testSameAsObjectSequenceMatcher() {
+        Random random = new Random(23);
+        FileDiff.LineJunkFilter blankLines = (lines, line) -> lines.end(line) - lines.start(line) == 1;
+        ObjectSequenceMatcher.JunkFilter<String> blankStrings = line -> line.equals("\n");
+        for (int round = 0; round < 200; round++) {
+            List<String> a = randomLines(random);
+            List<String> b = random.nextBoolean() ? mutate(random, a) : randomLines(random);
+            for (boolean junk : new boolean[] {false, true}) {
+                ObjectSequenceMatcher<String> expected = new ObjectSequenceMatcher<>(junk ? blankStrings : null, a, b, true);
+                FileDiff actual = new FileDiff(lines(String.join("", a)), lines(String.join("", b)), junk ? blankLines : null, true);
+                assertEquals(expected.getMatchingBlocks(), actual.getMatchingBlocks());
+                assertEquals(expected.getOpcodes(), actual.getOpcodes());
+                assertEquals(expected.ratio(), actual.ratio());
+                assertEquals(expected.quickRatio(), actual.quickRatio());
+            }
+        }
+    }
+
+    private static LineSequence lines(String s) {
+        return LineSequence.of(ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static List<String> mutate(Random random, List<String> lines) {
+        List<String> mutated = new ArrayList<>(lines);
+        for (int edits = random.nextInt(10); edits > 0; edits--) {
+            int at = random.nextInt(mutated.size() + 1);
+            if (random.nextBoolean() || at == mutated.size()) {
+                mutated.add(at, randomLine(random));
+            } else {
+                mutated.remove(at);
+            }
+        }
+        return mutated;
+    }
+
+    private static List<String> randomLines(Random random) {
+        List<String> lines = new ArrayList<>();
+        for (int k = random.nextInt(300); k > 0; k--) {
+            lines.add(randomLine(random));
+        }
+        return lines;
+    }
+
+    private static String randomLine(Random random) {
+        return random.nextInt(5) == 0 ? "\n" : "line " + random.nextInt(40) + "\n";
+    }
+}
@@ -0,0 +1,50 @@
+package drewfarris.util.difflib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that matching token sequences gives the same results as matching strings of the same elements.
+ */
+public class IntSequenceMatcherTest {
+
+    @Test
+    public void testLargeAlphabet() {
+        // more distinct tokens than there are chars
+        int n = 100_000;
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = i;
+        }
+        int[] b = Arrays.copyOf(a, n);
+        b[n / 2] = -1;
+        b[n - 1] = 70_000;
+        IntSequenceMatcher s = new IntSequenceMatcher(a, b);
+        assertEquals(Arrays.asList(new SequenceMatcher.Match(0, 0, n / 2), new SequenceMatcher.Match(n / 2 + 1, n / 2 + 1, n / 2 - 2),
+                        new SequenceMatcher.Match(n, n, 0)), s.getMatchingBlocks());
+        assertEquals(2.0 * (n - 2) / (2 * n), s.ratio());
+        assertEquals(s.ratio(), s.quickRatio());
+    }
+
+    @Test
+    public void testSetSequences() {
+        IntSequenceMatcher s = new IntSequenceMatcher(token -> token == 0, new int[0], new int[0], true);
+        assertEquals(1.0, s.ratio());
+        s.setSequenceB(new int[] {1, 0, 2, 3});
+        assertTrue(s.isBJunk(0));
+        assertFalse(s.isBJunk(1));
+        assertFalse(s.isBJunk(4));
+        assertEquals(0.0, s.ratio());
+        s.setSequenceA(new int[] {1, 2, 3});
+        assertEquals(Arrays.asList(new SequenceMatcher.Match(0, 0, 1), new SequenceMatcher.Match(1, 2, 2), new SequenceMatcher.Match(3, 4, 0)),
+                        s.getMatchingBlocks());
+        s.setSequences(new int[] {5, 6}, new int[] {6, 5});
+        assertEquals(0.5, s.ratio());
+        assertEquals(1.0, s.quickRatio());
+    }
+}
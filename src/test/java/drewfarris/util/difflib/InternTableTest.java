@@ -0,0 +1,42 @@
+package drewfarris.util.difflib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the sizing and collision handling of the interning table.
+ */
+public class InternTableTest {
+
+    @Test
+    public void testCapacity() {
+        assertEquals(8, InternTable.capacity(0));
+        assertEquals(8, InternTable.capacity(4));
+        assertEquals(16, InternTable.capacity(5));
+        assertEquals(InternTable.MAX_CAPACITY, InternTable.capacity(1 << 29));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> InternTable.capacity((1 << 29) + 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> InternTable.capacity(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testCollisions() {
+        // every item has the same hash, so only the equality tells them apart
+        String[] items = {"x", "y", "x", "z", "y"};
+        InternTable.Equality same = (item, firstItem) -> items[item].equals(items[firstItem]);
+        InternTable table = new InternTable(items.length);
+        int[] ids = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            ids[i] = table.intern(42, i, same);
+        }
+        Assertions.assertArrayEquals(new int[] {0, 1, 0, 2, 1}, ids);
+        assertEquals(3, table.size());
+        assertEquals(3, table.firstItem(2));
+
+        String[] others = {"z", "w"};
+        assertEquals(2, table.find(42, 0, (item, firstItem) -> others[item].equals(items[firstItem])));
+        assertEquals(InternTable.ABSENT, table.find(42, 1, (item, firstItem) -> others[item].equals(items[firstItem])));
+        assertEquals(InternTable.ABSENT, table.find(7, 0, (item, firstItem) -> others[item].equals(items[firstItem])));
+    }
+}
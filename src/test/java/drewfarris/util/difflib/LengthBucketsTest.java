@@ -0,0 +1,28 @@
+package drewfarris.util.difflib;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the grouping of strings by length.
+ */
+public class LengthBucketsTest {
+
+    @Test
+    public void testBuckets() {
+        LengthBuckets buckets = new LengthBuckets(new String[] {"abc", "", "de", "fgh", "", "i"});
+        assertEquals(4, buckets.count());
+        assertArrayEquals(new int[] {0, 1, 2, 3}, buckets.lengths);
+        assertArrayEquals(new int[] {0, 2, 3, 4, 6}, buckets.offsets);
+        // ascending within each bucket
+        assertArrayEquals(new int[] {1, 4, 5, 2, 0, 3}, buckets.members);
+        assertEquals(2, buckets.bucketOf(2));
+        assertEquals(-5, buckets.bucketOf(7));
+
+        LengthBuckets empty = new LengthBuckets(new String[0]);
+        assertEquals(0, empty.count());
+        assertArrayEquals(new int[] {0}, empty.offsets);
+    }
+}
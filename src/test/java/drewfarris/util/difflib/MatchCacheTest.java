@@ -0,0 +1,145 @@
+package drewfarris.util.difflib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that a MatchCache returns what a fresh matcher would, and keeps within its weight.
+ */
+public class MatchCacheTest {
+
+    private static final SequenceMatcher.JunkFilter BLANKS = ch -> ch == ' ';
+
+    @Test
+    public void testHitsAndMisses() {
+        MatchCache cache = new MatchCache(1 << 20);
+        double expected = new SequenceMatcher(null, "abcd", "bcde", true).ratio();
+        assertEquals(expected, cache.ratio(null, "abcd", "bcde", true));
+        assertEquals(expected, cache.ratio(null, new String("abcd"), new String("bcde"), true));
+        MatchCache.Stats stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(1, stats.size());
+        // the key holds hashes rather than the sequences, so the weight does not depend on their length
+        assertEquals(MatchCache.ENTRY_OVERHEAD, stats.weight());
+
+        // the junk settings are part of the key
+        assertEquals(new SequenceMatcher(BLANKS, "ab cd", "ab  cd", false).ratio(), cache.ratio(BLANKS, "ab cd", "ab  cd", false));
+        cache.ratio(BLANKS, "ab cd", "ab  cd", true);
+        cache.ratio(null, "ab cd", "ab  cd", true);
+        cache.ratio(null, "bcde", "abcd", true);
+        assertEquals(5, cache.stats().size());
+        assertEquals(5, cache.stats().misses());
+
+        cache.clear();
+        assertEquals(0, cache.stats().size());
+        assertEquals(0, cache.stats().weight());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MatchCache(0));
+    }
+
+    @Test
+    public void testMatchingBlocks() {
+        MatchCache ratios = new MatchCache(1 << 20);
+        MatchCache blocks = new MatchCache(1 << 20, true);
+        SequenceMatcher s = new SequenceMatcher(BLANKS, "private Thread currentThread;", "private volatile Thread currentThread;", true);
+        for (MatchCache cache : new MatchCache[] {ratios, blocks}) {
+            assertEquals(s.ratio(), cache.ratio(BLANKS, "private Thread currentThread;", "private volatile Thread currentThread;", true));
+            PackedMatchingBlocks first = cache.getMatchingBlocks(BLANKS, "private Thread currentThread;", "private volatile Thread currentThread;", true);
+            assertEquals(s.getMatchingBlocks(), first.asList());
+            PackedMatchingBlocks second = cache.getMatchingBlocks(BLANKS, "private Thread currentThread;", "private volatile Thread currentThread;", true);
+            assertEquals(s.getMatchingBlocks(), second.asList());
+            assertEquals(cache == blocks, first == second);
+        }
+        // a cache of ratios only has to compute the blocks every time
+        assertEquals(0, ratios.stats().hits());
+        assertEquals(3, ratios.stats().misses());
+        assertEquals(2, blocks.stats().hits());
+        assertEquals(1, blocks.stats().misses());
+        assertEquals(ratios.stats().weight() + MatchCache.BLOCKS_OVERHEAD + 3 * Integer.BYTES * s.getPackedMatchingBlocks().count(), blocks.stats().weight());
+    }
+
+    @Test
+    public void testEviction() {
+        // room for three entries of ratios
+        long entryWeight = MatchCache.ENTRY_OVERHEAD;
+        MatchCache cache = new MatchCache(3 * entryWeight);
+        cache.ratio(null, "a", "a", true);
+        cache.ratio(null, "b", "b", true);
+        cache.ratio(null, "c", "c", true);
+        cache.ratio(null, "a", "a", true); // now b is the least recently used
+        cache.ratio(null, "d", "d", true);
+        MatchCache.Stats stats = cache.stats();
+        assertEquals(1, stats.evictions());
+        assertEquals(3, stats.size());
+        assertEquals(3 * entryWeight, stats.weight());
+        cache.ratio(null, "a", "a", true);
+        cache.ratio(null, "b", "b", true);
+        assertEquals(2, cache.stats().hits());
+        assertEquals(5, cache.stats().misses());
+
+        // an entry heavier than the whole cache is not kept
+        MatchCache small = new MatchCache(MatchCache.ENTRY_OVERHEAD + MatchCache.BLOCKS_OVERHEAD, true);
+        small.getMatchingBlocks(null, "abc", "abc", true);
+        assertEquals(0, small.stats().size());
+        small.ratio(null, "abc", "abc", true);
+        assertEquals(0, small.stats().size());
+    }
+
+    @Test
+    public void testHash64() {
+        assertEquals(MatchCache.hash64(new String("abcd")), MatchCache.hash64("abcd"));
+        // pairs that String.hashCode() cannot tell apart
+        Assertions.assertNotEquals(MatchCache.hash64("Aa"), MatchCache.hash64("BB"));
+        Assertions.assertNotEquals(MatchCache.hash64("AaAa"), MatchCache.hash64("BBBB"));
+        Assertions.assertNotEquals(MatchCache.hash64(""), MatchCache.hash64("\0"));
+        MatchCache cache = new MatchCache(1 << 20);
+        assertEquals(new SequenceMatcher(null, "AaAa", "x", true).ratio(), cache.ratio(null, "AaAa", "x", true));
+        assertEquals(new SequenceMatcher(null, "BBBB", "x", true).ratio(), cache.ratio(null, "BBBB", "x", true));
+        assertEquals(2, cache.stats().size());
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        Random random = new Random(20);
+        List<String> strings = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            strings.add(Integer.toString(random.nextInt(100000), 3));
+        }
+        MatchCache cache = new MatchCache(20 * (MatchCache.ENTRY_OVERHEAD + 64), true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                long seed = t;
+                futures.add(executor.submit(() -> {
+                    Random r = new Random(seed);
+                    for (int k = 0; k < 2000; k++) {
+                        String a = strings.get(r.nextInt(strings.size()));
+                        String b = strings.get(r.nextInt(strings.size()));
+                        assertEquals(new SequenceMatcher(null, a, b, true).ratio(), cache.ratio(null, a, b, true));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        MatchCache.Stats stats = cache.stats();
+        assertEquals(8000, stats.hits() + stats.misses());
+        Assertions.assertTrue(stats.weight() <= 20 * (MatchCache.ENTRY_OVERHEAD + 64));
+        Assertions.assertTrue(stats.evictions() > 0);
+        assertSame(cache.getMatchingBlocks(null, strings.get(0), strings.get(0), true), cache.getMatchingBlocks(null, strings.get(0), strings.get(0), true));
+    }
+}
@@ -0,0 +1,52 @@
+package drewfarris.util.difflib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that near-duplicate clusters are the connected components found by comparing every pair.
+ */
+public class NearDuplicateClustersTest {
+
+    private static final SequenceMatcher.JunkFilter BLANKS = ch -> ch == ' ';
+
+    @Test
+    public void testClusters() {
+        List<String> strings = Arrays.asList("apple pie", "banana split", "apple pies", "bananas split", "cherry", "an apple pie", "cherries");
+        NearDuplicateClusters clusters = NearDuplicateClusters.compute(strings, 0.8, null);
+        assertEquals(4, clusters.count());
+        assertEquals(Arrays.asList(0, 2, 5), members(clusters, 0));
+        assertEquals(Arrays.asList(1, 3), members(clusters, 1));
+        assertEquals(Collections.singletonList(4), members(clusters, 2));
+        assertEquals(Collections.singletonList(6), members(clusters, 3));
+        assertEquals(0, clusters.clusterOf(5));
+        assertEquals(3, clusters.clusterOf(6));
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, NearDuplicateClusters.compute(Collections.emptyList(), 0.5, ForkJoinPool.commonPool()).count());
+        NearDuplicateClusters clusters = NearDuplicateClusters.compute(Arrays.asList("", "", "a"), 0.9, null);
+        assertEquals(2, clusters.count());
+        assertEquals(Arrays.asList(0, 1), members(clusters, 0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> NearDuplicateClusters.compute(Collections.emptyList(), 1.5, null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> NearDuplicateClusters.compute(Collections.emptyList(), null, true, 0.5, 5, null));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> clusters.member(0, 2));
+    }
+
+    private static List<Integer> members(NearDuplicateClusters clusters, int cluster) {
+        List<Integer> members = new ArrayList<>();
+        for (int k = 0; k < clusters.size(cluster); k++) {
+            members.add(clusters.member(cluster, k));
+        }
+        return members;
+    }
+}
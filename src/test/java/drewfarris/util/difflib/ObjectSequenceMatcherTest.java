@@ -0,0 +1,47 @@
+package drewfarris.util.difflib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that matching lists of objects gives the same results as matching strings of the same elements.
+ */
+public class ObjectSequenceMatcherTest {
+
+    @Test
+    public void testLines() {
+        List<String> a = Arrays.asList("one", "two", "three", "four", "five");
+        List<String> b = Arrays.asList("zero", "one", "three", "four", "4.5", "five");
+        ObjectSequenceMatcher<String> s = new ObjectSequenceMatcher<>(a, b);
+        assertEquals(Arrays.asList(new SequenceMatcher.Match(0, 1, 1), new SequenceMatcher.Match(2, 2, 2), new SequenceMatcher.Match(4, 5, 1),
+                        new SequenceMatcher.Match(5, 6, 0)), s.getMatchingBlocks());
+        assertEquals(Arrays.asList(new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.INSERT, 0, 0, 0, 1),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.EQUAL, 0, 1, 1, 2),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.DELETE, 1, 2, 2, 2),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.EQUAL, 2, 4, 2, 4),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.INSERT, 4, 4, 4, 5),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.EQUAL, 4, 5, 5, 6)), s.getOpcodes());
+        assertEquals(8.0 / 11, s.ratio(), 1e-12);
+
+        s.setSequenceB(a);
+        assertEquals(1.0, s.ratio());
+        s.setSequenceA(Collections.emptyList());
+        assertEquals(0.0, s.ratio());
+        assertEquals(Collections.singletonList(new SequenceMatcher.Match(0, 5, 0)), s.getMatchingBlocks());
+    }
+
+    @Test
+    public void testJunk() {
+        List<String> a = Arrays.asList("x", "", "y", "", "z");
+        List<String> b = Arrays.asList("", "x", "", "y", "z");
+        ObjectSequenceMatcher<String> s = new ObjectSequenceMatcher<>(String::isEmpty, a, b, true);
+        assertEquals(Collections.singleton(""), s.getBJunk());
+        assertEquals(new SequenceMatcher(ch -> ch == ' ', "x y z", " x yz", true).getMatchingBlocks(), s.getMatchingBlocks());
+        assertEquals(Collections.emptySet(), new ObjectSequenceMatcher<>(a, b).getBJunk());
+    }
+}
@@ -0,0 +1,47 @@
+package drewfarris.util.difflib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that queries of a QGramIndex return exactly what getCloseMatches returns over the same list.
+ */
+public class QGramIndexTest {
+
+    @Test
+    public void testGetCloseMatches() {
+        List<String> possibilities = Arrays.asList("ape", "apple", "peach", "puppy", "pineapple", "applesauce");
+        QGramIndex index = new QGramIndex(possibilities);
+        assertEquals(6, index.size());
+        assertEquals(QGramIndex.DEFAULT_Q, index.getQ());
+        assertEquals(Arrays.asList("apple", "ape"), index.getCloseMatches("appel", 3, 0.6));
+        assertEquals(SequenceMatcher.getCloseMatches("appel", possibilities, 3, 0.6), index.getCloseMatches("appel", 3, 0.6));
+        assertEquals(SequenceMatcher.getCloseMatches("apple sauce", possibilities, 3, 0.6), index.getCloseMatches("apple sauce", 3, 0.6));
+    }
+
+    @Test
+    public void testDuplicatesAndEmptyStrings() {
+        List<String> possibilities = Arrays.asList("", "abc", "bca", "abc", "", "b", "abcabc");
+        QGramIndex index = new QGramIndex(possibilities, 2);
+        for (String word : Arrays.asList("", "a", "abc", "babc", "xyz")) {
+            for (double cutoff : new double[] {0.0, 0.5, 1.0}) {
+                assertEquals(SequenceMatcher.getCloseMatches(word, possibilities, 4, cutoff), index.getCloseMatches(word, 4, cutoff));
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        QGramIndex index = new QGramIndex(Collections.singletonList("apple"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> index.getCloseMatches("apple", 0, 0.6));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> index.getCloseMatches("apple", 3, 1.1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new QGramIndex(Collections.emptyList(), 0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new QGramIndex(Collections.emptyList(), QGramIndex.MAX_Q + 1));
+    }
+}
@@ -0,0 +1,54 @@
+package drewfarris.util.difflib;
+
+import java.util.Random;
+
+/**
+ * Generates the random inputs of the randomized tests.
+ * <p>
+ * An alphabet is a string whose code points are drawn uniformly, so a code point that appears more than once in it is drawn more often.
+ * </p>
+ */
+final class RandomStrings {
+
+    private RandomStrings() {}
+
+    /**
+     * @return the first count lowercase letters
+     */
+    static String letters(int count) {
+        StringBuilder sb = new StringBuilder(count);
+        for (int k = 0; k < count; k++) {
+            sb.append((char) ('a' + k));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return a string of length code points drawn from the alphabet
+     */
+    static String randomString(Random random, int length, String alphabet) {
+        int[] codePoints = alphabet.codePoints().toArray();
+        StringBuilder sb = new StringBuilder(length);
+        for (int k = 0; k < length; k++) {
+            sb.appendCodePoint(codePoints[random.nextInt(codePoints.length)]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return s after up to maxEdits edits, each inserting a code point drawn from the alphabet or deleting a char
+     */
+    static String mutate(Random random, String s, int maxEdits, String alphabet) {
+        int[] codePoints = alphabet.codePoints().toArray();
+        StringBuilder sb = new StringBuilder(s);
+        for (int edits = random.nextInt(maxEdits + 1); edits > 0; edits--) {
+            int at = random.nextInt(sb.length() + 1);
+            if (random.nextBoolean() || at == sb.length()) {
+                sb.insert(at, Character.toChars(codePoints[random.nextInt(codePoints.length)]));
+            } else {
+                sb.deleteCharAt(at);
+            }
+        }
+        return sb.toString();
+    }
+}
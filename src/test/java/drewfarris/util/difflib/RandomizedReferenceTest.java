@@ -0,0 +1,299 @@
+package drewfarris.util.difflib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Tests on random inputs that each specialized matcher and index gives exactly the results of the general implementation it stands in for.
+ */
+public class RandomizedReferenceTest {
+
+    private static final SequenceMatcher.JunkFilter BLANKS = ch -> ch == ' ';
+
+    /** mostly ASCII, with some chars beyond Latin-1 */
+    private static final String WORD_CHARS = RandomStrings.letters(6).repeat(3) + "é一";
+
+    /** A randomized comparison */
+    interface Check {
+        void run(Random random);
+    }
+
+    static Stream<Arguments> checks() {
+        return Stream.of(Arguments.of("suffix automaton / dynamic programming", 11L, (Check) RandomizedReferenceTest::suffixAutomaton),
+                        Arguments.of("CloseMatchIndex / getCloseMatches", 14L, (Check) RandomizedReferenceTest::closeMatchIndex),
+                        Arguments.of("NearDuplicateClusters / all pairs", 16L, (Check) RandomizedReferenceTest::nearDuplicateClusters),
+                        Arguments.of("minSharedGrams / shared q-grams", 160L, (Check) RandomizedReferenceTest::minSharedGrams),
+                        Arguments.of("QGramIndex / getCloseMatches", 18L, (Check) RandomizedReferenceTest::qGramIndex),
+                        Arguments.of("ObjectSequenceMatcher / SequenceMatcher", 21L, (Check) RandomizedReferenceTest::objectSequenceMatcher),
+                        Arguments.of("IntSequenceMatcher / SequenceMatcher", 22L, (Check) RandomizedReferenceTest::intSequenceMatcher),
+                        Arguments.of("CodePointSequenceMatcher / code point tokens", 24L, (Check) RandomizedReferenceTest::codePointSequenceMatcher));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("checks")
+    public void testSameAsReference(String name, long seed, Check check) {
+        check.run(new Random(seed));
+    }
+
+    private static void suffixAutomaton(Random random) {
+        for (int round = 0; round < 300; round++) {
+            String alphabet = " " + RandomStrings.letters(1 + random.nextInt(random.nextBoolean() ? 3 : 40));
+            String a = RandomStrings.randomString(random, random.nextInt(400), alphabet);
+            String b = RandomStrings.randomString(random, random.nextInt(400), alphabet);
+            SequenceMatcher.JunkFilter junkFilter = random.nextBoolean() ? BLANKS : null;
+            boolean autoJunk = random.nextBoolean();
+            SequenceMatcher expected = new SequenceMatcher(junkFilter, a, b, autoJunk);
+            SequenceMatcher actual = new SequenceMatcher(junkFilter, a, b, autoJunk);
+            actual.setLongestMatchEngine(SequenceMatcher.LongestMatchEngine.SUFFIX_AUTOMATON);
+            assertEquals(expected.getMatchingBlocks(), actual.getMatchingBlocks(), a + " / " + b);
+            assertEquals(expected.getOpcodes(), actual.getOpcodes(), a + " / " + b);
+        }
+    }
+
+    private static void closeMatchIndex(Random random) {
+        for (int round = 0; round < 40; round++) {
+            List<String> possibilities = new ArrayList<>();
+            for (int i = random.nextInt(500); i > 0; i--) {
+                possibilities.add(RandomStrings.randomString(random, random.nextInt(12), WORD_CHARS));
+            }
+            CloseMatchIndex index = new CloseMatchIndex(possibilities);
+            for (int query = 0; query < 10; query++) {
+                String word = random.nextBoolean() && !possibilities.isEmpty() ? possibilities.get(random.nextInt(possibilities.size()))
+                                : RandomStrings.randomString(random, random.nextInt(12), WORD_CHARS);
+                int n = 1 + random.nextInt(15);
+                double cutoff = random.nextInt(10) / 10.0;
+                assertEquals(SequenceMatcher.getCloseMatches(word, possibilities, n, cutoff), index.getCloseMatches(word, n, cutoff));
+            }
+        }
+    }
+
+    private static void qGramIndex(Random random) {
+        for (int q = 1; q <= QGramIndex.MAX_Q; q++) {
+            for (int round = 0; round < 10; round++) {
+                List<String> possibilities = new ArrayList<>();
+                for (int i = random.nextInt(500); i > 0; i--) {
+                    possibilities.add(random.nextInt(3) == 0 && !possibilities.isEmpty()
+                                    ? RandomStrings.mutate(random, possibilities.get(random.nextInt(possibilities.size())), 3, RandomStrings.letters(6))
+                                    : RandomStrings.randomString(random, random.nextInt(25), WORD_CHARS));
+                }
+                QGramIndex index = new QGramIndex(possibilities, q);
+                for (int query = 0; query < 10; query++) {
+                    String word = random.nextBoolean() && !possibilities.isEmpty()
+                                    ? RandomStrings.mutate(random, possibilities.get(random.nextInt(possibilities.size())), 3, RandomStrings.letters(6))
+                                    : RandomStrings.randomString(random, random.nextInt(25), WORD_CHARS);
+                    int n = 1 + random.nextInt(15);
+                    double cutoff = random.nextInt(11) / 10.0;
+                    assertEquals(SequenceMatcher.getCloseMatches(word, possibilities, n, cutoff), index.getCloseMatches(word, n, cutoff),
+                                    "q=" + q + " word=" + word + " n=" + n + " cutoff=" + cutoff);
+                }
+            }
+        }
+    }
+
+    private static void nearDuplicateClusters(Random random) {
+        String alphabet = " " + RandomStrings.letters(8);
+        List<String> strings = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            if (i > 0 && random.nextInt(3) == 0) {
+                strings.add(RandomStrings.mutate(random, strings.get(random.nextInt(i)), 3, RandomStrings.letters(8)));
+            } else {
+                strings.add(RandomStrings.randomString(random, random.nextInt(30), alphabet));
+            }
+        }
+        for (double threshold : new double[] {0.0, 0.5, 0.75, 0.9, 1.0}) {
+            int[] expected = allPairs(strings, threshold);
+            for (int q = 1; q <= QGramIndex.MAX_Q; q++) {
+                for (ForkJoinPool pool : Arrays.asList(null, ForkJoinPool.commonPool())) {
+                    NearDuplicateClusters clusters = NearDuplicateClusters.compute(strings, BLANKS, true, threshold, q, pool);
+                    for (int i = 0; i < strings.size(); i++) {
+                        assertEquals(expected[i], clusters.member(clusters.clusterOf(i), 0), "q=" + q + " threshold=" + threshold + " string " + i);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void minSharedGrams(Random random) {
+        // every pair of strings whose ratio reaches the cutoff shares at least the bound's number of q-grams
+        String alphabet = " " + RandomStrings.letters(8);
+        for (int round = 0; round < 2000; round++) {
+            String a = RandomStrings.randomString(random, random.nextInt(30), alphabet);
+            String b = random.nextBoolean() ? RandomStrings.mutate(random, a, 3, RandomStrings.letters(8))
+                            : RandomStrings.randomString(random, random.nextInt(30), alphabet);
+            double ratio = new SequenceMatcher(BLANKS, a, b, true).ratio();
+            for (int q = 1; q <= QGramIndex.MAX_Q; q++) {
+                Assertions.assertTrue(shared(a, b, q) >= QGramIndex.minSharedGrams(a.length(), b.length(), q, ratio), a + " / " + b + " q=" + q);
+            }
+        }
+    }
+
+    private static void objectSequenceMatcher(Random random) {
+        // long enough, and with a small enough alphabet, that autoJunk finds popular elements
+        String alphabet = " " + RandomStrings.letters(6);
+        ObjectSequenceMatcher.JunkFilter<Character> blankObjects = ch -> ch == ' ';
+        ObjectSequenceMatcher<Character> reused = new ObjectSequenceMatcher<>(blankObjects, Collections.emptyList(), Collections.emptyList(), true);
+        for (int round = 0; round < 500; round++) {
+            String a = RandomStrings.randomString(random, random.nextInt(400), alphabet);
+            String b = random.nextBoolean() ? RandomStrings.mutate(random, a, 19, RandomStrings.letters(6))
+                            : RandomStrings.randomString(random, random.nextInt(400), alphabet);
+            for (boolean autoJunk : new boolean[] {false, true}) {
+                SequenceMatcher expected = new SequenceMatcher(BLANKS, a, b, autoJunk);
+                ObjectSequenceMatcher<Character> actual = new ObjectSequenceMatcher<>(blankObjects, characters(a), characters(b), autoJunk);
+                assertEquals(expected.getMatchingBlocks(), actual.getMatchingBlocks(), a + " / " + b);
+                assertEquals(expected.getOpcodes(), actual.getOpcodes(), a + " / " + b);
+                assertEquals(expected.ratio(), actual.ratio());
+                assertEquals(expected.quickRatio(), actual.quickRatio());
+                assertEquals(expected.realQuickRatio(), actual.realQuickRatio());
+                assertEquals(expected.findLongestMatch(0, a.length() / 2, b.length() / 3, b.length()),
+                                actual.findLongestMatch(0, a.length() / 2, b.length() / 3, b.length()));
+            }
+            // setting one side at a time gives the same results as a new matcher
+            if (random.nextBoolean()) {
+                reused.setSequenceA(characters(a));
+                reused.setSequenceB(characters(b));
+            } else {
+                reused.setSequenceB(characters(b));
+                reused.setSequenceA(characters(a));
+            }
+            assertEquals(new SequenceMatcher(BLANKS, a, b, true).getMatchingBlocks(), reused.getMatchingBlocks(), a + " / " + b);
+        }
+    }
+
+    private static void intSequenceMatcher(Random random) {
+        // mostly Latin-1, with some chars beyond it so both kinds of SequenceMatcher index are compared
+        String alphabet = " 一" + RandomStrings.letters(6).repeat(2);
+        IntSequenceMatcher.JunkFilter blankTokens = token -> token == token(' ');
+        for (int round = 0; round < 500; round++) {
+            String a = RandomStrings.randomString(random, random.nextInt(400), alphabet);
+            String b = random.nextBoolean() ? RandomStrings.mutate(random, a, 19, RandomStrings.letters(6))
+                            : RandomStrings.randomString(random, random.nextInt(400), alphabet);
+            for (boolean autoJunk : new boolean[] {false, true}) {
+                for (boolean junk : new boolean[] {false, true}) {
+                    SequenceMatcher expected = new SequenceMatcher(junk ? BLANKS : null, a, b, autoJunk);
+                    IntSequenceMatcher actual = new IntSequenceMatcher(junk ? blankTokens : null, tokens(a), tokens(b), autoJunk);
+                    assertEquals(expected.getMatchingBlocks(), actual.getMatchingBlocks(), a + " / " + b);
+                    assertEquals(expected.getOpcodes(), actual.getOpcodes(), a + " / " + b);
+                    assertEquals(expected.ratio(), actual.ratio());
+                    assertEquals(expected.quickRatio(), actual.quickRatio());
+                    assertEquals(expected.realQuickRatio(), actual.realQuickRatio());
+                    assertEquals(expected.findLongestMatch(a.length() / 4, a.length(), 0, b.length() / 2),
+                                    actual.findLongestMatch(a.length() / 4, a.length(), 0, b.length() / 2));
+                }
+            }
+        }
+    }
+
+    private static void codePointSequenceMatcher(Random random) {
+        // two emoji that share their high surrogate
+        String alphabet = new String(Character.toChars(0x1F600)) + new String(Character.toChars(0x1F603)) + "ab";
+        for (int round = 0; round < 500; round++) {
+            String a = RandomStrings.randomString(random, random.nextInt(200), alphabet);
+            String b = random.nextBoolean() ? a.substring(random.nextInt(a.length() + 1)) + RandomStrings.randomString(random, 20, alphabet)
+                            : RandomStrings.randomString(random, 200, alphabet);
+            CodePointSequenceMatcher actual = new CodePointSequenceMatcher(a, b);
+            IntSequenceMatcher expected = new IntSequenceMatcher(a.codePoints().toArray(), b.codePoints().toArray());
+            assertEquals(expected.getOpcodes(), actual.getOpcodes());
+            assertEquals(expected.ratio(), actual.ratio());
+            assertEquals(expected.quickRatio(), actual.quickRatio());
+            // the char opcodes cover the strings, in the same order, and their equal ranges are equal
+            int i = 0;
+            int j = 0;
+            for (SequenceMatcher.Opcode opcode : actual.getCharOpcodes()) {
+                assertEquals(i, opcode.i1);
+                assertEquals(j, opcode.j1);
+                if (opcode.tag == SequenceMatcher.OpcodeTag.EQUAL) {
+                    assertEquals(a.substring(opcode.i1, opcode.i2), b.substring(opcode.j1, opcode.j2));
+                }
+                i = opcode.i2;
+                j = opcode.j2;
+            }
+            assertEquals(a.length(), i);
+            assertEquals(b.length(), j);
+
+            // without surrogates, the results are SequenceMatcher's
+            String plainA = a.replaceAll("[^ab]", "c");
+            String plainB = b.replaceAll("[^ab]", "c");
+            CodePointSequenceMatcher plain = new CodePointSequenceMatcher(plainA, plainB);
+            assertEquals(new SequenceMatcher(plainA, plainB).getOpcodes(), plain.getCharOpcodes());
+        }
+    }
+
+    /**
+     * @return for every string, the smallest index in its component
+     */
+    private static int[] allPairs(List<String> strings, double threshold) {
+        int[] parents = new int[strings.size()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+        }
+        SequenceMatcher s = new SequenceMatcher(BLANKS, "", "", true);
+        for (int i = 0; i < parents.length; i++) {
+            for (int j = i + 1; j < parents.length; j++) {
+                s.setSequences(strings.get(i), strings.get(j));
+                if (s.ratio() >= threshold) {
+                    int ri = root(parents, i);
+                    int rj = root(parents, j);
+                    parents[Math.max(ri, rj)] = Math.min(ri, rj);
+                }
+            }
+        }
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = root(parents, i);
+        }
+        return parents;
+    }
+
+    private static int root(int[] parents, int x) {
+        while (parents[x] != x) {
+            x = parents[x];
+        }
+        return x;
+    }
+
+    private static int shared(String a, String b, int q) {
+        List<String> grams = new ArrayList<>();
+        for (int i = 0; i + q <= b.length(); i++) {
+            grams.add(b.substring(i, i + q));
+        }
+        int shared = 0;
+        for (int i = 0; i + q <= a.length(); i++) {
+            if (grams.remove(a.substring(i, i + q))) {
+                shared++;
+            }
+        }
+        return shared;
+    }
+
+    private static List<Character> characters(String s) {
+        List<Character> characters = new ArrayList<>(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            characters.add(s.charAt(i));
+        }
+        return characters;
+    }
+
+    /** a one-to-one map from chars to tokens that spreads them over the whole int range, negative values included */
+    private static int token(char ch) {
+        return ch * 0x9E3779B1;
+    }
+
+    private static int[] tokens(String s) {
+        int[] tokens = new int[s.length()];
+        for (int i = 0; i < s.length(); i++) {
+            tokens[i] = token(s.charAt(i));
+        }
+        return tokens;
+    }
+}
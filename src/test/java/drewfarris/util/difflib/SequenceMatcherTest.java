@@ -2,14 +2,28 @@ package drewfarris.util.difflib;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 /**
  * JUnit 5 tests for SequenceMatcher, ported from Python difflib test_difflib.py.
@@ -219,6 +233,317 @@ public class SequenceMatcherTest {
             assertEquals(a.substring(match.aOffset, match.aOffset + match.size), b.substring(match.bOffset, match.bOffset + match.size));
             Assertions.assertFalse(longerMatchExists(a, b, match.size));
         }
+
+        @Test
+        public void testRepeatedCallsDoNotSeeStaleLengths() {
+            // the j2len rows are reused between calls, so results must not depend on what was computed before
+            String a = "xabcdy abcd";
+            String b = "abcd xabcdy";
+            SequenceMatcher sm = new SequenceMatcher(null, a, b, false);
+            SequenceMatcher.Match whole = sm.findLongestMatch(0, a.length(), 0, b.length());
+            assertEquals(new SequenceMatcher.Match(0, 5, 6), whole);
+            assertEquals(new SequenceMatcher.Match(1, 0, 4), sm.findLongestMatch(0, a.length(), 0, 4));
+            assertEquals(new SequenceMatcher.Match(2, 7, 3), sm.findLongestMatch(2, 5, 5, b.length()));
+            assertEquals(whole, sm.findLongestMatch(0, a.length(), 0, b.length()));
+
+            // a shorter b after a longer one
+            sm.setSequenceB("cd");
+            assertEquals(new SequenceMatcher.Match(3, 0, 2), sm.findLongestMatch(0, a.length(), 0, 2));
+        }
+    }
+
+    /**
+     * Tests for the Latin-1 fast path, which must agree exactly with the general path
+     */
+    @Nested
+    class TestLatin1 {
+
+        /** move every element out of Latin-1 so that the general path is used, without changing which elements are equal */
+        private String widen(String s) {
+            StringBuilder sb = new StringBuilder(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                sb.append((char) (s.charAt(i) + 0x100));
+            }
+            return sb.toString();
+        }
+
+        private void assertSameAsGeneralPath(String a, String b, boolean junk, boolean autoJunk) {
+            SequenceMatcher latin1 = new SequenceMatcher(junk ? ch -> ch == ' ' : null, a, b, autoJunk);
+            SequenceMatcher general = new SequenceMatcher(junk ? ch -> ch == (char) (' ' + 0x100) : null, widen(a), widen(b), autoJunk);
+            assertEquals(general.getMatchingBlocks(), latin1.getMatchingBlocks());
+            assertEquals(general.getOpcodes(), latin1.getOpcodes());
+            assertEquals(general.ratio(), latin1.ratio());
+            assertEquals(general.quickRatio(), latin1.quickRatio());
+            assertEquals(general.getBJunk().size(), latin1.getBJunk().size());
+        }
+
+        @Test
+        public void testMatchesGeneralPath() {
+            Random random = new Random(7);
+            for (int n = 0; n < 200; n++) {
+                String a = RandomStrings.randomString(random, random.nextInt(300), randomAlphabet(random));
+                String b = RandomStrings.randomString(random, random.nextInt(300), randomAlphabet(random));
+                assertSameAsGeneralPath(a, b, random.nextBoolean(), random.nextBoolean());
+            }
+        }
+
+        @Test
+        public void testLongRuns() {
+            // long shared runs, so that matches are extended far over popular and junk elements
+            Random random = new Random(19);
+            for (int n = 0; n < 50; n++) {
+                String a = RandomStrings.randomString(random, 500 + random.nextInt(2000), " " + RandomStrings.letters(1 + random.nextInt(4)));
+                StringBuilder b = new StringBuilder(a);
+                for (int edits = random.nextInt(6); edits > 0; edits--) {
+                    b.insert(random.nextInt(b.length() + 1), RandomStrings.randomString(random, random.nextInt(20), " " + RandomStrings.letters(3)));
+                }
+                assertSameAsGeneralPath(a, b.toString(), random.nextBoolean(), random.nextBoolean());
+            }
+        }
+
+        @Test
+        public void testHighLatin1Characters() {
+            assertSameAsGeneralPath("caf\u00e9 cr\u00e8me br\u00fbl\u00e9e", "cafe creme brulee", true, true);
+            assertSameAsGeneralPath("\u00ff\u00fe\u00fd\u0000", "\u0000\u00fd\u00fe\u00ff", false, false);
+        }
+
+        @Test
+        public void testMixedWidths() {
+            // only b fits in Latin-1, then only a
+            SequenceMatcher sm = new SequenceMatcher(null, "abc\u4e00def", "abcdef", true);
+            assertEquals(0.923, sm.ratio(), 0.001);
+            sm.setSequences("abcdef", "abc\u4e00def");
+            assertEquals(0.923, sm.ratio(), 0.001);
+            assertEquals(0.923, sm.quickRatio(), 0.001);
+        }
+
+        /** @return blanks and up to six letters */
+        private String randomAlphabet(Random random) {
+            return " " + RandomStrings.letters(1 + random.nextInt(6));
+        }
+    }
+
+    /**
+     * Tests for parallel matching blocks, which must agree exactly with the serial algorithm
+     */
+    @Nested
+    class TestParallel {
+
+        @Test
+        public void testMatchesSerial() {
+            Random random = new Random(3);
+            for (int n = 0; n < 100; n++) {
+                String a = RandomStrings.randomString(random, 2000, RandomStrings.letters(20));
+                String b = RandomStrings.mutate(random, a, 400, RandomStrings.letters(20) + "z");
+                boolean autoJunk = random.nextBoolean();
+                SequenceMatcher serial = new SequenceMatcher(null, a, b, autoJunk);
+                SequenceMatcher parallel = new SequenceMatcher(null, a, b, autoJunk);
+                parallel.setParallelism(ForkJoinPool.commonPool(), 1 + random.nextInt(64));
+                // streamed from the parallel tasks without caching the blocks
+                List<SequenceMatcher.Match> visited = new ArrayList<>();
+                parallel.visitMatchingBlocks((i, j, k) -> visited.add(new SequenceMatcher.Match(i, j, k)));
+                assertEquals(serial.getMatchingBlocks(), visited);
+                assertEquals(serial.getMatchingBlocks(), parallel.getMatchingBlocks());
+                assertEquals(serial.getOpcodes(), parallel.getOpcodes());
+            }
+        }
+
+        @Test
+        public void testInvalidThreshold() {
+            SequenceMatcher sm = new SequenceMatcher();
+            Assertions.assertThrows(IllegalArgumentException.class, () -> sm.setParallelism(ForkJoinPool.commonPool(), 0));
+        }
+    }
+
+    /**
+     * Tests for the packed matching blocks and opcodes, and the list views over them
+     */
+    @Nested
+    class TestPacked {
+
+        @Test
+        public void testAccessorsMatchListView() {
+            SequenceMatcher sm = new SequenceMatcher("qabxcd", "abycdf");
+            PackedMatchingBlocks blocks = sm.getPackedMatchingBlocks();
+            assertEquals(3, blocks.count());
+            assertEquals(1, blocks.aOffset(0));
+            assertEquals(0, blocks.bOffset(0));
+            assertEquals(2, blocks.size(0));
+            assertEquals(4, blocks.totalSize());
+            assertEquals(new SequenceMatcher.Match(6, 6, 0), blocks.asList().get(2));
+            assertEquals(blocks.asList(), sm.getMatchingBlocks());
+
+            PackedOpcodes opcodes = sm.getPackedOpcodes();
+            assertEquals(5, opcodes.count());
+            assertEquals(SequenceMatcher.OpcodeTag.DELETE, opcodes.tag(0));
+            assertEquals(0, opcodes.i1(0));
+            assertEquals(1, opcodes.i2(0));
+            assertEquals(0, opcodes.j1(0));
+            assertEquals(0, opcodes.j2(0));
+            assertEquals(SequenceMatcher.OpcodeTag.INSERT, opcodes.tag(4));
+            assertEquals(opcodes.asList(), sm.getOpcodes());
+        }
+
+        @Test
+        public void testViewsAreReadOnlyAndChecked() {
+            SequenceMatcher sm = new SequenceMatcher("abc", "abd");
+            List<SequenceMatcher.Match> blocks = sm.getMatchingBlocks();
+            Assertions.assertThrows(UnsupportedOperationException.class, () -> blocks.add(new SequenceMatcher.Match(0, 0, 0)));
+            Assertions.assertThrows(IndexOutOfBoundsException.class, () -> blocks.get(blocks.size()));
+            Assertions.assertThrows(IndexOutOfBoundsException.class, () -> sm.getPackedMatchingBlocks().size(-1));
+            Assertions.assertThrows(IndexOutOfBoundsException.class, () -> sm.getPackedOpcodes().tag(sm.getPackedOpcodes().count()));
+        }
+
+        @Test
+        public void testCachedUntilSequencesChange() {
+            SequenceMatcher sm = new SequenceMatcher("abc", "abd");
+            PackedMatchingBlocks blocks = sm.getPackedMatchingBlocks();
+            Assertions.assertSame(blocks, sm.getPackedMatchingBlocks());
+            Assertions.assertSame(sm.getPackedOpcodes(), sm.getPackedOpcodes());
+            sm.setSequenceA("xbd");
+            Assertions.assertNotSame(blocks, sm.getPackedMatchingBlocks());
+            assertEquals(new SequenceMatcher.Match(1, 1, 2), sm.getPackedMatchingBlocks().asList().get(0));
+        }
+    }
+
+    /**
+     * Tests for streaming the matching blocks to a visitor
+     */
+    @Nested
+    class TestMatchVisitor {
+
+        private List<SequenceMatcher.Match> visit(SequenceMatcher sm) {
+            List<SequenceMatcher.Match> blocks = new ArrayList<>();
+            sm.visitMatchingBlocks((i, j, k) -> blocks.add(new SequenceMatcher.Match(i, j, k)));
+            return blocks;
+        }
+
+        @Test
+        public void testSameAsMatchingBlocks() {
+            Random random = new Random(5);
+            for (int n = 0; n < 300; n++) {
+                String alphabet = RandomStrings.letters(1 + random.nextInt(26));
+                String a = RandomStrings.randomString(random, random.nextInt(300), alphabet);
+                String b = RandomStrings.mutate(random, a, 120, alphabet);
+                boolean autoJunk = random.nextBoolean();
+                SequenceMatcher.JunkFilter junkFilter = random.nextBoolean() ? ch -> ch == 'a' : null;
+                SequenceMatcher streamed = new SequenceMatcher(junkFilter, a, b, autoJunk);
+                List<SequenceMatcher.Match> blocks = visit(streamed);
+                assertEquals(new SequenceMatcher(junkFilter, a, b, autoJunk).getMatchingBlocks(), blocks);
+                // replayed from the cache once the blocks have been computed
+                assertEquals(streamed.getMatchingBlocks(), blocks);
+                assertEquals(blocks, visit(streamed));
+            }
+        }
+
+        @Test
+        public void testEmptySequences() {
+            assertEquals(Arrays.asList(new SequenceMatcher.Match(0, 0, 0)), visit(new SequenceMatcher("", "")));
+            assertEquals(Arrays.asList(new SequenceMatcher.Match(3, 0, 0)), visit(new SequenceMatcher("abc", "")));
+        }
+    }
+
+    /**
+     * Tests for streaming the opcodes to a handler
+     */
+    @Nested
+    class TestOpcodeHandler {
+
+        private List<SequenceMatcher.Opcode> visit(SequenceMatcher sm) {
+            List<SequenceMatcher.Opcode> opcodes = new ArrayList<>();
+            sm.visitOpcodes((tag, i1, i2, j1, j2) -> opcodes.add(new SequenceMatcher.Opcode(tag, i1, i2, j1, j2)));
+            return opcodes;
+        }
+
+        @Test
+        public void testSameAsOpcodes() {
+            Random random = new Random(8);
+            for (int n = 0; n < 300; n++) {
+                String alphabet = RandomStrings.letters(1 + random.nextInt(26));
+                String a = RandomStrings.randomString(random, random.nextInt(200), alphabet);
+                String b = RandomStrings.mutate(random, a, 100, alphabet + "z");
+                SequenceMatcher streamed = new SequenceMatcher(a, b);
+                List<SequenceMatcher.Opcode> opcodes = visit(streamed);
+                assertEquals(new SequenceMatcher(a, b).getOpcodes(), opcodes);
+                // replayed from the cached opcodes
+                assertEquals(streamed.getOpcodes(), opcodes);
+                assertEquals(opcodes, visit(streamed));
+            }
+        }
+
+        @Test
+        public void testEmptySequences() {
+            Assertions.assertTrue(visit(new SequenceMatcher("", "")).isEmpty());
+            assertEquals(Arrays.asList(new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.INSERT, 0, 0, 0, 2)), visit(new SequenceMatcher("", "ab")));
+        }
+    }
+
+    /**
+     * Tests for sharing a compiled second sequence between matchers
+     */
+    @Nested
+    class TestCompiledSequence {
+
+        @Test
+        public void testSameAsUncompiled() {
+            SequenceMatcher.JunkFilter junkFilter = ch -> ch == ' ';
+            CompiledSequence b = SequenceMatcher.compile("private Thread currentThread;", junkFilter, true);
+            assertEquals("private Thread currentThread;", b.getSequence());
+            assertEquals(new HashSet<>(Arrays.asList(' ')), b.getJunk());
+
+            SequenceMatcher sm = new SequenceMatcher("private volatile Thread currentThread;", b);
+            SequenceMatcher expected = new SequenceMatcher(junkFilter, "private volatile Thread currentThread;", "private Thread currentThread;", true);
+            assertEquals(expected.getMatchingBlocks(), sm.getMatchingBlocks());
+            assertEquals(expected.ratio(), sm.ratio());
+            assertEquals(expected.quickRatio(), sm.quickRatio());
+            assertEquals(expected.getBJunk(), sm.getBJunk());
+
+            // switching between a string and a compiled sequence keeps the results consistent
+            sm.setSequenceB("0123");
+            assertEquals(0.0, sm.ratio());
+            sm.setSequenceB(b);
+            assertEquals(expected.ratio(), sm.ratio());
+        }
+
+        @Test
+        public void testSettingsMustMatch() {
+            CompiledSequence b = SequenceMatcher.compile("abc", null, false);
+            Assertions.assertThrows(IllegalArgumentException.class, () -> new SequenceMatcher().setSequenceB(b));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> new SequenceMatcher(ch -> false, "", "", false).setSequenceB(b));
+            new SequenceMatcher("", "", false).setSequenceB(b);
+        }
+
+        @Test
+        public void testSharedBetweenThreads() throws Exception {
+            Random random = new Random(10);
+            String reference = RandomStrings.randomString(random, 3000, RandomStrings.letters(12));
+            CompiledSequence b = SequenceMatcher.compile(reference, null, true);
+            List<String> inputs = new ArrayList<>();
+            for (int n = 0; n < 64; n++) {
+                int start = random.nextInt(2000);
+                inputs.add(reference.substring(start, start + 500 + random.nextInt(500)) + "xyz");
+            }
+
+            // one matcher per thread, reused for every input the thread is given, and all of them reading the same index
+            ThreadLocal<SequenceMatcher> matchers = ThreadLocal.withInitial(() -> new SequenceMatcher("", b));
+            ForkJoinPool pool = new ForkJoinPool(4);
+            try {
+                List<Double> ratios = pool.submit(() -> inputs.parallelStream().map(a -> new SequenceMatcher(a, b).ratio()).collect(Collectors.toList())).get();
+                List<List<SequenceMatcher.Opcode>> opcodes = pool.submit(() -> inputs.parallelStream().map(a -> {
+                    SequenceMatcher sm = matchers.get();
+                    sm.setSequenceA(a);
+                    return sm.getOpcodes();
+                }).collect(Collectors.toList())).get();
+                for (int n = 0; n < inputs.size(); n++) {
+                    SequenceMatcher expected = new SequenceMatcher(inputs.get(n), reference);
+                    assertEquals(expected.ratio(), ratios.get(n));
+                    assertEquals(expected.getOpcodes(), opcodes.get(n));
+                }
+                assertEquals(reference, b.getSequence());
+            } finally {
+                pool.shutdown();
+            }
+        }
     }
 
     /**
@@ -248,6 +573,89 @@ public class SequenceMatcherTest {
         Assertions.assertTrue(matches.contains("apple"));
     }
 
+    /**
+     * getCloseMatches keeps only the best n while scanning; the result must be the first n of a stable sort of every score above the cutoff
+     */
+    @Test
+    public void testGetCloseMatchesTopN() {
+        Random random = new Random(12);
+        for (int round = 0; round < 50; round++) {
+            List<String> possibilities = new ArrayList<>();
+            for (int i = 0; i < 300; i++) {
+                possibilities.add(RandomStrings.randomString(random, 1 + random.nextInt(8), RandomStrings.letters(6)));
+            }
+            String word = possibilities.get(random.nextInt(possibilities.size()));
+            int n = 1 + random.nextInt(20);
+            double cutoff = random.nextInt(8) / 10.0;
+
+            List<SequenceMatcher.MatchResult> scored = new ArrayList<>();
+            for (String x : possibilities) {
+                double ratio = new SequenceMatcher(x, word).ratio();
+                if (ratio >= cutoff) {
+                    scored.add(new SequenceMatcher.MatchResult(ratio, x));
+                }
+            }
+            scored.sort((a, b) -> Double.compare(b.score, a.score));
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < Math.min(n, scored.size()); i++) {
+                expected.add(scored.get(i).word);
+            }
+            assertEquals(expected, SequenceMatcher.getCloseMatches(word, possibilities, n, cutoff));
+        }
+    }
+
+    /**
+     * The parallel getCloseMatches must return exactly what the serial one does, ties included
+     */
+    @Test
+    public void testGetCloseMatchesParallel() {
+        Random random = new Random(13);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (int round = 0; round < 20; round++) {
+                List<String> possibilities = new ArrayList<>();
+                for (int i = random.nextInt(2000); i > 0; i--) {
+                    possibilities.add(RandomStrings.randomString(random, 1 + random.nextInt(10), RandomStrings.letters(5)));
+                }
+                String word = "abcdeab".substring(0, 1 + random.nextInt(7));
+                int n = 1 + random.nextInt(30);
+                double cutoff = random.nextInt(8) / 10.0;
+                List<String> expected = SequenceMatcher.getCloseMatches(word, possibilities, n, cutoff);
+                assertEquals(expected, SequenceMatcher.getCloseMatches(word, possibilities, n, cutoff, executor));
+                assertEquals(expected, SequenceMatcher.getCloseMatches(word, new LinkedList<>(possibilities), n, cutoff, ForkJoinPool.commonPool()));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testGetCloseMatchesStreaming(@TempDir Path dir) throws IOException {
+        Random random = new Random(17);
+        for (int round = 0; round < 20; round++) {
+            List<String> possibilities = new ArrayList<>();
+            for (int i = random.nextInt(1000); i > 0; i--) {
+                // some chars that take two bytes in UTF-8
+                possibilities.add(RandomStrings.randomString(random, random.nextInt(10), RandomStrings.letters(5).repeat(4) + "é"));
+            }
+            String word = "abcdeab".substring(0, 1 + random.nextInt(7));
+            int n = 1 + random.nextInt(30);
+            double cutoff = random.nextInt(8) / 10.0;
+            List<String> expected = SequenceMatcher.getCloseMatches(word, possibilities, n, cutoff);
+            assertEquals(expected, SequenceMatcher.getCloseMatches(word, possibilities.iterator(), n, cutoff));
+            assertEquals(expected, SequenceMatcher.getCloseMatches(word, possibilities.stream().map(StringBuilder::new), n, cutoff));
+
+            Path file = dir.resolve("possibilities" + round + ".txt");
+            Files.write(file, possibilities, StandardCharsets.UTF_8);
+            assertEquals(expected, SequenceMatcher.getCloseMatches(word, file, StandardCharsets.UTF_8, n, cutoff));
+        }
+        Assertions.assertThrows(NoSuchFileException.class,
+                        () -> SequenceMatcher.getCloseMatches("apple", dir.resolve("missing.txt"), StandardCharsets.UTF_8, 3, 0.6));
+        Path latin1 = dir.resolve("latin1.txt");
+        Files.write(latin1, Collections.singletonList("caf\u00e9"), StandardCharsets.ISO_8859_1);
+        Assertions.assertThrows(IOException.class, () -> SequenceMatcher.getCloseMatches("cafe", latin1, StandardCharsets.UTF_8, 3, 0.6));
+    }
+
     /**
      * Test exception handling for getCloseMatches
      */
@@ -303,6 +711,64 @@ public class SequenceMatcherTest {
         Assertions.assertTrue(realQuickRatio >= ratio);
     }
 
+    /**
+     * ratioIfAbove may stop early, but must agree exactly with ratio whenever the ratio reaches the cutoff
+     */
+    @Test
+    public void testRatioIfAbove() {
+        Random random = new Random(15);
+        for (int n = 0; n < 1000; n++) {
+            String alphabet = RandomStrings.letters(1 + random.nextInt(10));
+            String a = RandomStrings.randomString(random, random.nextInt(80), alphabet);
+            String b = RandomStrings.mutate(random, a, 40, alphabet + "z");
+            double cutoff = random.nextDouble();
+            double ratio = new SequenceMatcher(a, b).ratio();
+            SequenceMatcher sm = new SequenceMatcher(a, b);
+            assertEquals(ratio >= cutoff ? ratio : -1, sm.ratioIfAbove(cutoff));
+            assertEquals(ratio >= cutoff, sm.ratioAtLeast(cutoff));
+            // once the blocks are known they are used directly
+            assertEquals(ratio, sm.ratio());
+            assertEquals(ratio >= cutoff ? ratio : -1, sm.ratioIfAbove(cutoff));
+            assertEquals(ratio, sm.ratioIfAbove(ratio));
+        }
+    }
+
+    private static final String LATIN1_CHARS = RandomStrings.letters(8);
+    private static final String WIDE_CHARS = "\u4e00\u4e01\u4e02\u4e03\u4e04\u4e05\u4e06\u4e07";
+
+    /**
+     * quickRatio reuses its scratch counts between calls, so repeated calls with new sequences must still count the multiset intersection exactly
+     */
+    @Test
+    public void testQuickRatioRepeatedCalls() {
+        Random random = new Random(9);
+        SequenceMatcher sm = new SequenceMatcher();
+        String currentB = "";
+        for (int n = 0; n < 500; n++) {
+            // mix Latin-1 and wider characters in both sequences
+            String base = random.nextBoolean() ? LATIN1_CHARS : WIDE_CHARS;
+            String a = RandomStrings.randomString(random, random.nextInt(60), base.repeat(5) + WIDE_CHARS);
+            String b = RandomStrings.randomString(random, random.nextInt(60), base.repeat(5) + LATIN1_CHARS);
+            if (random.nextBoolean()) {
+                currentB = b;
+                sm.setSequenceB(currentB);
+            }
+            sm.setSequenceA(a);
+
+            int[] counts = new int[Character.MAX_VALUE + 1];
+            currentB.chars().forEach(c -> counts[c]++);
+            int matches = 0;
+            for (int i = 0; i < a.length(); i++) {
+                if (counts[a.charAt(i)]-- > 0) {
+                    matches++;
+                }
+            }
+            int length = a.length() + currentB.length();
+            assertEquals(length == 0 ? 1.0 : 2.0 * matches / length, sm.quickRatio());
+            assertEquals(length == 0 ? 1.0 : 2.0 * matches / length, sm.quickRatio());
+        }
+    }
+
     /**
      * Test sequence setting methods
      */
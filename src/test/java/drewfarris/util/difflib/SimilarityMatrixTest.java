@@ -0,0 +1,117 @@
+package drewfarris.util.difflib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that every way of computing a similarity matrix gives the ratios of independent matchers.
+ */
+public class SimilarityMatrixTest {
+
+    private static final SequenceMatcher.JunkFilter BLANKS = ch -> ch == ' ';
+
+    // more rows than a band and more columns than a block, so that tasks and blocks both split
+    private static final List<String> ROWS = randomStrings(new Random(16), SimilarityMatrix.BAND_ROWS * 2 + 7);
+    private static final List<String> COLS = randomStrings(new Random(17), SimilarityMatrix.BLOCK_COLUMNS + 45);
+
+    private static float expected(int r, int c) {
+        return (float) new SequenceMatcher(BLANKS, ROWS.get(r), COLS.get(c), true).ratio();
+    }
+
+    @Test
+    public void testDense() {
+        for (ForkJoinPool pool : Arrays.asList(null, ForkJoinPool.commonPool())) {
+            float[] matrix = SimilarityMatrix.computeDense(ROWS, COLS, BLANKS, true, pool);
+            assertEquals(ROWS.size() * COLS.size(), matrix.length);
+            for (int r = 0; r < ROWS.size(); r++) {
+                for (int c = 0; c < COLS.size(); c++) {
+                    assertEquals(expected(r, c), matrix[r * COLS.size() + c]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDirectBuffer() {
+        int cells = ROWS.size() * COLS.size();
+        FloatBuffer out = ByteBuffer.allocateDirect((cells + 3) * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        out.position(3);
+        SimilarityMatrix.computeDense(ROWS, COLS, BLANKS, true, out, ForkJoinPool.commonPool());
+        assertEquals(3, out.position());
+        assertEquals(0.0f, out.get(0));
+        for (int r = 0; r < ROWS.size(); r++) {
+            for (int c = 0; c < COLS.size(); c++) {
+                assertEquals(expected(r, c), out.get(3 + r * COLS.size() + c));
+            }
+        }
+        Assertions.assertThrows(IllegalArgumentException.class, () -> SimilarityMatrix.computeDense(ROWS, COLS, BLANKS, true, FloatBuffer.allocate(10), null));
+    }
+
+    @Test
+    public void testTooLargeForDense() {
+        // 65536 * 32768 cells is one more than an int can index; the lists are never compiled, so they cost nothing
+        List<String> rows = Collections.nCopies(1 << 16, "a");
+        List<String> cols = Collections.nCopies(1 << 15, "b");
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class,
+                        () -> SimilarityMatrix.computeDense(rows, cols, null, true, FloatBuffer.allocate(1), null));
+        Assertions.assertTrue(e.getMessage().contains("exceeds the limit"), e.getMessage());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> SimilarityMatrix.computeDense(rows, cols, null, true, null));
+    }
+
+    @Test
+    public void testSparse() {
+        double cutoff = 0.5;
+        List<int[]> pairs = new ArrayList<>();
+        for (int r = 0; r < ROWS.size(); r++) {
+            for (int c = 0; c < COLS.size(); c++) {
+                if (new SequenceMatcher(BLANKS, ROWS.get(r), COLS.get(c), true).ratio() >= cutoff) {
+                    pairs.add(new int[] {r, c});
+                }
+            }
+        }
+        Assertions.assertFalse(pairs.isEmpty());
+        for (ForkJoinPool pool : Arrays.asList(null, ForkJoinPool.commonPool())) {
+            SimilarityMatrix.Sparse sparse = SimilarityMatrix.compute(ROWS, COLS, BLANKS, true, cutoff, pool);
+            assertEquals(pairs.size(), sparse.count());
+            for (int index = 0; index < pairs.size(); index++) {
+                int r = pairs.get(index)[0];
+                int c = pairs.get(index)[1];
+                assertEquals(r, sparse.row(index));
+                assertEquals(c, sparse.col(index));
+                assertEquals(expected(r, c), sparse.score(index));
+            }
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, SimilarityMatrix.computeDense(Collections.emptyList(), COLS, null, true, null).length);
+        assertEquals(0, SimilarityMatrix.computeDense(ROWS, Collections.emptyList(), null, true, ForkJoinPool.commonPool()).length);
+        assertEquals(0, SimilarityMatrix.compute(ROWS, Collections.emptyList(), null, true, 0.0, ForkJoinPool.commonPool()).count());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> SimilarityMatrix.compute(ROWS, COLS, null, true, 1.5, null));
+    }
+
+    private static List<String> randomStrings(Random random, int count) {
+        List<String> strings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int k = random.nextInt(15); k > 0; k--) {
+                sb.append(random.nextInt(6) == 0 ? ' ' : (char) ('a' + random.nextInt(5)));
+            }
+            strings.add(sb.toString());
+        }
+        return strings;
+    }
+}
@@ -0,0 +1,70 @@
+package drewfarris.util.difflib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that the suffix automaton engine finds exactly the matches the dynamic programming engine does.
+ */
+public class SuffixAutomatonTest {
+
+    private static SequenceMatcher matcher(SequenceMatcher.JunkFilter junkFilter, String a, String b, boolean autoJunk) {
+        SequenceMatcher sm = new SequenceMatcher(junkFilter, a, b, autoJunk);
+        sm.setLongestMatchEngine(SequenceMatcher.LongestMatchEngine.SUFFIX_AUTOMATON);
+        return sm;
+    }
+
+    private static void assertSameAsDynamicProgramming(SequenceMatcher.JunkFilter junkFilter, String a, String b, boolean autoJunk) {
+        SequenceMatcher expected = new SequenceMatcher(junkFilter, a, b, autoJunk);
+        SequenceMatcher actual = matcher(junkFilter, a, b, autoJunk);
+        assertEquals(expected.getMatchingBlocks(), actual.getMatchingBlocks());
+        assertEquals(expected.getOpcodes(), actual.getOpcodes());
+    }
+
+    @Test
+    public void testTieBreaking() {
+        // several maximal matches: the earliest in a wins, then the earliest in b
+        SequenceMatcher sm = matcher(null, "abxab", "ab", false);
+        assertEquals(new SequenceMatcher.Match(0, 0, 2), sm.findLongestMatch(0, 5, 0, 2));
+        sm = matcher(null, "ab", "xabab", false);
+        assertEquals(new SequenceMatcher.Match(0, 1, 2), sm.findLongestMatch(0, 2, 0, 5));
+
+        // restricted ranges
+        sm = matcher(null, "xab ab", "ab xab ab", false);
+        assertEquals(new SequenceMatcher.Match(0, 3, 6), sm.findLongestMatch(0, 6, 0, 9));
+        assertEquals(new SequenceMatcher.Match(1, 0, 3), sm.findLongestMatch(0, 6, 0, 3));
+        assertEquals(new SequenceMatcher.Match(3, 6, 3), sm.findLongestMatch(3, 6, 3, 9));
+        assertEquals(new SequenceMatcher.Match(2, 5, 1), sm.findLongestMatch(2, 3, 4, 6));
+        assertEquals(new SequenceMatcher.Match(0, 0, 0), sm.findLongestMatch(0, 1, 0, 2));
+    }
+
+    @Test
+    public void testJunkAndPopularElements() {
+        // same example as the junk documentation of findLongestMatch: blanks are junk, so only "abcd" can start a match
+        SequenceMatcher sm = matcher(ch -> ch == ' ', " abcd", "abcd abcd", true);
+        assertEquals(new SequenceMatcher.Match(1, 0, 4), sm.findLongestMatch(0, 5, 0, 9));
+
+        String b = "d".repeat(100) + "abc" + "d".repeat(100);
+        sm = matcher(null, "dabcd", b, true);
+        assertEquals(new SequenceMatcher.Match(0, 99, 5), sm.findLongestMatch(0, 5, 0, b.length()));
+    }
+
+    @Test
+    public void testRepetitiveInput() {
+        StringBuilder a = new StringBuilder();
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            String line = "key" + (i % 7) + " = value" + (i % 5) + ";\n";
+            a.append(line);
+            b.append(i % 37 == 0 ? "changed\n" : line);
+        }
+        assertSameAsDynamicProgramming(null, a.toString(), b.toString(), false);
+        assertSameAsDynamicProgramming(null, a.toString(), b.toString(), true);
+    }
+
+    @Test
+    public void testWideCharacters() {
+        assertSameAsDynamicProgramming(null, "一丁丂 abc 七", "丁丂 abc 七一", true);
+    }
+}
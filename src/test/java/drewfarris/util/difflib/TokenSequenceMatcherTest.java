@@ -0,0 +1,167 @@
+package drewfarris.util.difflib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that matching texts token by token gives the same results as matching their lists of token strings.
+ */
+public class TokenSequenceMatcherTest {
+
+    @Test
+    public void testWords() {
+        TokenSequenceMatcher s = new TokenSequenceMatcher(Tokenizer.WORDS, "the quick brown fox", "the quick red fox!");
+        assertEquals(4, s.tokenCountA());
+        assertEquals(10, s.tokenStartA(2));
+        assertEquals(15, s.tokenEndA(2));
+        assertEquals(Arrays.asList(new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.EQUAL, 0, 2, 0, 2),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.REPLACE, 2, 3, 2, 3),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.EQUAL, 3, 4, 3, 4)), s.getOpcodes());
+        assertEquals(Arrays.asList(new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.EQUAL, 0, 10, 0, 10),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.REPLACE, 10, 15, 10, 13),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.EQUAL, 15, 19, 13, 17),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.INSERT, 19, 19, 17, 18)), s.getCharOpcodes());
+        assertEquals(0.75, s.ratio());
+
+        s.setSequenceA("  ");
+        assertEquals(Collections.singletonList(new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.REPLACE, 0, 2, 0, 18)), s.getCharOpcodes());
+        assertEquals(Collections.emptyList(), tokens(Tokenizer.NON_WHITESPACE, " \t\n"));
+        assertEquals(Arrays.asList("don't", "stop"), tokens(Tokenizer.NON_WHITESPACE, " don't\tstop\n"));
+        assertEquals(Arrays.asList("don", "t", "stop"), tokens(Tokenizer.WORDS, " don't\tstop\n"));
+    }
+
+    @Test
+    public void testCharOpcodesWhitespace() {
+        // leading whitespace is deleted rather than folded into the first equal range
+        assertEquals(Arrays.asList(new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.DELETE, 0, 2, 0, 0),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.EQUAL, 2, 6, 0, 4),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.REPLACE, 6, 9, 4, 7)),
+                        new TokenSequenceMatcher(Tokenizer.WORDS, "  foo bar", "foo baz").getCharOpcodes());
+        // whitespace between matching tokens only matches if it is the same
+        assertEquals(Arrays.asList(new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.EQUAL, 0, 3, 0, 3),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.REPLACE, 3, 6, 3, 4),
+                        new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.EQUAL, 6, 9, 4, 7)),
+                        new TokenSequenceMatcher(Tokenizer.WORDS, "foo   bar", "foo bar").getCharOpcodes());
+        assertEquals(Collections.singletonList(new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.REPLACE, 0, 1, 0, 2)),
+                        new TokenSequenceMatcher(Tokenizer.WORDS, "x", "  ").getCharOpcodes());
+        // texts with no tokens still get opcodes for their whitespace
+        assertEquals(Collections.singletonList(new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.REPLACE, 0, 2, 0, 1)),
+                        new TokenSequenceMatcher(Tokenizer.WORDS, "  ", "\t").getCharOpcodes());
+        assertEquals(Collections.singletonList(new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.INSERT, 0, 0, 0, 1)),
+                        new TokenSequenceMatcher(Tokenizer.WORDS, "", " ").getCharOpcodes());
+        assertEquals(Collections.singletonList(new SequenceMatcher.Opcode(SequenceMatcher.OpcodeTag.EQUAL, 0, 2, 0, 2)),
+                        new TokenSequenceMatcher(Tokenizer.WORDS, "  ", "  ").getCharOpcodes());
+        assertEquals(Collections.emptyList(), new TokenSequenceMatcher(Tokenizer.WORDS, "", "").getCharOpcodes());
+    }
+
+    @Test
+    public void testHashCollisions() {
+        // "Aa" and "BB" have the same hash, so only comparing their chars tells them apart
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        TokenSequenceMatcher s = new TokenSequenceMatcher(Tokenizer.WORDS, "Aa BB Aa", "BB Aa BB");
+        assertEquals(new ObjectSequenceMatcher<>(Arrays.asList("Aa", "BB", "Aa"), Arrays.asList("BB", "Aa", "BB")).getOpcodes(), s.getOpcodes());
+        assertEquals(Arrays.asList(new SequenceMatcher.Match(0, 1, 2), new SequenceMatcher.Match(3, 3, 0)), s.getMatchingBlocks());
+    }
+
+    @Test
+    public void testJunk() {
+        TokenSequenceMatcher.JunkFilter the = (text, start, end) -> text.subSequence(start, end).toString().equals("the");
+        TokenSequenceMatcher s = new TokenSequenceMatcher(Tokenizer.WORDS, the, "the cat and the hat", "a cat and the hat", true);
+        assertEquals(new ObjectSequenceMatcher<>(word -> word.equals("the"), Arrays.asList("the", "cat", "and", "the", "hat"),
+                        Arrays.asList("a", "cat", "and", "the", "hat"), true).getMatchingBlocks(), s.getMatchingBlocks());
+    }
+
+    @Test
+    public void testBadTokenizer() {
+        Tokenizer overlapping = (text, sink) -> {
+            sink.token(0, 2);
+            sink.token(1, 3);
+        };
+        Tokenizer backwards = (text, sink) -> {
+            sink.token(2, 3);
+            sink.token(0, 1);
+        };
+        Tokenizer empty = (text, sink) -> sink.token(1, 1);
+        Tokenizer reversed = (text, sink) -> sink.token(2, 1);
+        Tokenizer negative = (text, sink) -> sink.token(-1, 1);
+        Tokenizer pastEnd = (text, sink) -> sink.token(0, text.length() + 1);
+        for (Tokenizer bad : new Tokenizer[] {overlapping, backwards, empty, reversed, negative, pastEnd}) {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> new TokenSequenceMatcher(bad, "abc", "abc"));
+        }
+
+        // a matcher is left unchanged by a text its tokenizer rejects
+        Tokenizer shortOnly = (text, sink) -> Tokenizer.WORDS.tokenize(text, (start, end) -> sink.token(start, text.length() < 8 ? end : end + 8));
+        TokenSequenceMatcher matcher = new TokenSequenceMatcher(shortOnly, "ab cd", "ab ce");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> matcher.setSequenceA("much longer text"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> matcher.setSequenceB("much longer text"));
+        assertEquals(new TokenSequenceMatcher(Tokenizer.WORDS, "ab cd", "ab ce").getOpcodes(), matcher.getOpcodes());
+    }
+
+    @Test
+    public void testSameAsObjectSequenceMatcher() {
+        Random random = new Random(25);
+        TokenSequenceMatcher reused = new TokenSequenceMatcher(Tokenizer.NON_WHITESPACE, "", "");
+        for (int round = 0; round < 300; round++) {
+            String a = randomText(random);
+            String b = random.nextBoolean() ? a.substring(random.nextInt(a.length() + 1)) + randomText(random) : randomText(random);
+            TokenSequenceMatcher actual = new TokenSequenceMatcher(Tokenizer.NON_WHITESPACE, a, b);
+            ObjectSequenceMatcher<String> expected = new ObjectSequenceMatcher<>(tokens(Tokenizer.NON_WHITESPACE, a), tokens(Tokenizer.NON_WHITESPACE, b));
+            assertEquals(expected.getMatchingBlocks(), actual.getMatchingBlocks());
+            assertEquals(expected.getOpcodes(), actual.getOpcodes());
+            assertEquals(expected.ratio(), actual.ratio());
+            assertEquals(expected.quickRatio(), actual.quickRatio());
+
+            // the char opcodes cover both texts in order, alternate between equal and unequal ranges, have the tags their ranges call for, and
+            // their equal ranges have equal text
+            int i = 0;
+            int j = 0;
+            boolean equal = false;
+            for (SequenceMatcher.Opcode opcode : actual.getCharOpcodes()) {
+                assertEquals(i, opcode.i1);
+                assertEquals(j, opcode.j1);
+                if (i > 0 || j > 0) {
+                    assertEquals(!equal, opcode.tag == SequenceMatcher.OpcodeTag.EQUAL);
+                }
+                equal = opcode.tag == SequenceMatcher.OpcodeTag.EQUAL;
+                if (equal) {
+                    assertEquals(a.substring(opcode.i1, opcode.i2), b.substring(opcode.j1, opcode.j2));
+                } else {
+                    SequenceMatcher.OpcodeTag tag = opcode.i1 == opcode.i2 ? SequenceMatcher.OpcodeTag.INSERT
+                                    : opcode.j1 == opcode.j2 ? SequenceMatcher.OpcodeTag.DELETE : SequenceMatcher.OpcodeTag.REPLACE;
+                    assertEquals(tag, opcode.tag);
+                }
+                i = opcode.i2;
+                j = opcode.j2;
+            }
+            assertEquals(a.length(), i);
+            assertEquals(b.length(), j);
+
+            reused.setSequenceB(b);
+            reused.setSequenceA(a);
+            assertEquals(expected.getOpcodes(), reused.getOpcodes());
+        }
+    }
+
+    private static List<String> tokens(Tokenizer tokenizer, String text) {
+        List<String> tokens = new ArrayList<>();
+        tokenizer.tokenize(text, (start, end) -> tokens.add(text.substring(start, end)));
+        return tokens;
+    }
+
+    private static String randomText(Random random) {
+        String[] words = {"alpha", "beta", "gamma", "delta", "Aa", "BB", "x"};
+        StringBuilder sb = new StringBuilder();
+        for (int k = random.nextInt(60); k > 0; k--) {
+            sb.append(random.nextInt(10) == 0 ? "  " : " ").append(words[random.nextInt(words.length)]);
+        }
+        return sb.toString();
+    }
+}